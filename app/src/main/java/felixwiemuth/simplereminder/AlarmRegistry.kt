@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder
+
+import android.content.Context
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.decodeFromString
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
+
+/**
+ * Keeps track of the alarms set and the notifications shown by [ReminderManager], so that it can skip calls to the
+ * system which would not change anything (e.g., cancelling an alarm which is not set, or setting an alarm again for
+ * the same time). The registry is persisted, as alarms and notifications outlive the process.
+ *
+ * Alarms and notifications are removed by the system on reboot and when the app is force-stopped, after which the
+ * registry has to be [clear]ed. Notifications dismissed by the user may still be registered, which only leads to an
+ * unnecessary cancel.
+ *
+ * After an update from a version which did not keep the registry, alarms and notifications may exist which are not
+ * registered. Until the registry has been completed (see [isComplete]), cancelling must therefore not be skipped.
+ *
+ * The operations in this object are thread-safe.
+ */
+object AlarmRegistry {
+    /**
+     * An alarm of a reminder.
+     *
+     * @param action the kind of [ReminderManager.ReminderAction] the alarm performs (all kinds of a reminder use the
+     * same pending intent, so a reminder has at most one alarm)
+     * @param time the time the alarm is set for
+     */
+    @Serializable
+    data class Alarm(val action: String, val time: Long)
+
+    @Serializable
+    private class Registry(
+        val alarms: HashMap<Int, Alarm> = HashMap(),
+        val notifications: HashSet<Int> = HashSet(),
+        /**
+         * Whether all alarms and notifications which exist are registered.
+         */
+        var complete: Boolean = false
+    )
+
+    private const val PREF_REGISTRY = "registry"
+
+    private val lock = Any()
+
+    /**
+     * The registry, or null if not loaded yet.
+     */
+    private var registry: Registry? = null
+
+    /**
+     * Number of nested [batch]es running on the current thread.
+     */
+    private val batchDepth = object : ThreadLocal<Int>() {
+        override fun initialValue() = 0
+    }
+
+    /**
+     * Whether the registry has changed since it was last persisted.
+     */
+    private var dirty = false
+
+    /**
+     * Run the given block, persisting the changes of the registry made on this thread only once at its end. The block
+     * is not run exclusively, so that other threads do not wait for it (e.g., while it reads all reminders or calls the
+     * system).
+     */
+    fun <T> batch(context: Context, block: () -> T): T {
+        val depth = batchDepth.get()!!
+        batchDepth.set(depth + 1)
+        try {
+            return block()
+        } finally {
+            batchDepth.set(depth)
+            synchronized(lock) { persistIfDone(context) }
+        }
+    }
+
+    fun getAlarm(context: Context, reminderId: Int): Alarm? = synchronized(lock) { load(context).alarms[reminderId] }
+
+    fun putAlarm(context: Context, reminderId: Int, alarm: Alarm) = change(context) { it.alarms.put(reminderId, alarm) != alarm }
+
+    /**
+     * @return whether an alarm was registered
+     */
+    fun removeAlarm(context: Context, reminderId: Int): Boolean = change(context) { it.alarms.remove(reminderId) != null }
+
+    fun putNotification(context: Context, reminderId: Int) = change(context) { it.notifications.add(reminderId) }
+
+    /**
+     * @return whether a notification was registered
+     */
+    fun removeNotification(context: Context, reminderId: Int): Boolean =
+        change(context) { it.notifications.remove(reminderId) }
+
+    /**
+     * Remove all alarms and notifications, which must have been removed from the system.
+     */
+    fun clear(context: Context) = synchronized(lock) {
+        // Alarms set by a version without the registry may not have been removed
+        registry = Registry(complete = load(context).complete)
+        dirty = true
+        persistIfDone(context)
+    }
+
+    /**
+     * Whether all alarms and notifications which exist are registered, so that cancelling an alarm or notification
+     * which is not registered can be skipped.
+     */
+    fun isComplete(context: Context): Boolean = synchronized(lock) { load(context).complete }
+
+    /**
+     * Record that all alarms and notifications which exist are registered.
+     */
+    fun markComplete(context: Context) {
+        change(context) { registry -> !registry.complete.also { registry.complete = true } }
+    }
+
+    /**
+     * Apply the given change to the registry and persist it (unless in a [batch]).
+     *
+     * @param change returns whether it changed the registry
+     * @return the result of the change
+     */
+    private fun change(context: Context, change: (Registry) -> Boolean): Boolean = synchronized(lock) {
+        val changed = change(load(context))
+        if (changed) {
+            dirty = true
+            persistIfDone(context)
+        }
+        changed
+    }
+
+    private fun persistIfDone(context: Context) {
+        if (batchDepth.get() == 0 && dirty) {
+            Prefs.getAlarmRegistryPrefs(context).edit()
+                .putString(PREF_REGISTRY, Json.encodeToString(load(context)))
+                .apply()
+            dirty = false
+        }
+    }
+
+    private fun load(context: Context): Registry =
+        registry ?: (Prefs.getAlarmRegistryPrefs(context).getString(PREF_REGISTRY, null)
+            ?.let { Json.decodeFromString<Registry>(it) }
+            ?: Registry()).also { registry = it }
+}
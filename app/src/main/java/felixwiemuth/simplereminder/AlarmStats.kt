@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder
+
+import android.content.Context
+import felixwiemuth.simplereminder.util.AlarmManagerUtil.AlarmApi
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.decodeFromString
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.JsonElement
+import kotlinx.serialization.json.encodeToJsonElement
+
+/**
+ * Records how late alarms of [ReminderManager.ReminderAction]s are delivered compared to the time they were scheduled
+ * for, together with the alarm API used to schedule them. This shows how much Doze and battery savers of the device
+ * delay reminders.
+ *
+ * The most recent [CAPACITY] deliveries are kept in a ring buffer in the diagnostics preferences.
+ */
+object AlarmStats {
+    @Serializable
+    class Delivery(
+        /**
+         * The kind of action which was delivered, e.g., "Notify".
+         */
+        val action: String,
+        val api: AlarmApi,
+        /**
+         * The time the alarm was scheduled for, in milliseconds.
+         */
+        val scheduled: Long,
+        /**
+         * The time the alarm was delivered, in milliseconds.
+         */
+        val delivered: Long
+    ) {
+        val drift: Long
+            get() = delivered - scheduled
+    }
+
+    /**
+     * A ring buffer of the last [CAPACITY] deliveries.
+     */
+    @Serializable
+    class DeliveryLog(
+        private val deliveries: MutableList<Delivery> = ArrayList(),
+        /**
+         * Position of the next delivery to be overwritten once the buffer is full.
+         */
+        private var next: Int = 0
+    ) {
+        fun add(delivery: Delivery) {
+            if (deliveries.size < CAPACITY) {
+                deliveries.add(delivery)
+            } else {
+                deliveries[next] = delivery
+                next = (next + 1) % CAPACITY
+            }
+        }
+
+        /**
+         * The recorded deliveries, oldest first.
+         */
+        val recorded: List<Delivery>
+            get() = deliveries.subList(next, deliveries.size) + deliveries.subList(0, next)
+
+        /**
+         * Summarize the drift of the recorded deliveries for each alarm API which was used.
+         */
+        fun summarize(): Map<AlarmApi, Summary> =
+            deliveries.groupBy { it.api }.mapValues { (_, deliveries) -> Summary.of(deliveries.map { it.drift }) }
+    }
+
+    /**
+     * Percentiles of the drift of deliveries in milliseconds.
+     */
+    class Summary(val count: Int, val median: Long, val p95: Long, val max: Long) {
+        companion object {
+            fun of(drifts: List<Long>): Summary {
+                val sorted = drifts.sorted()
+                return Summary(sorted.size, percentile(sorted, 50.0), percentile(sorted, 95.0), sorted.last())
+            }
+
+            /**
+             * The nearest-rank percentile (0 < p <= 100) of the given non-empty sorted values.
+             */
+            private fun percentile(sorted: List<Long>, p: Double): Long =
+                sorted[(Math.ceil(sorted.size * p / 100).toInt() - 1).coerceIn(0, sorted.size - 1)]
+        }
+    }
+
+    const val CAPACITY = 200
+
+    private const val PREF_DIAGNOSTICS_ALARM_DELIVERIES = "alarmDeliveries"
+
+    private val json = Json { ignoreUnknownKeys = true }
+
+    private val lock = Any()
+
+    /**
+     * Record the delivery of an alarm at the current time.
+     */
+    fun recordDelivery(context: Context, action: String, api: AlarmApi, scheduled: Long) = synchronized(lock) {
+        val log = getDeliveryLog(context)
+        log.add(Delivery(action, api, scheduled, System.currentTimeMillis()))
+        Prefs.getDiagnosticsPrefs(context).edit()
+            .putString(PREF_DIAGNOSTICS_ALARM_DELIVERIES, json.encodeToString(log))
+            .apply()
+    }
+
+    fun getDeliveryLog(context: Context): DeliveryLog = synchronized(lock) {
+        Prefs.getDiagnosticsPrefs(context).getString(PREF_DIAGNOSTICS_ALARM_DELIVERIES, null)
+            ?.let {
+                try {
+                    json.decodeFromString<DeliveryLog>(it)
+                } catch (e: IllegalArgumentException) {
+                    null // Discard deliveries in an incompatible format
+                }
+            }
+            ?: DeliveryLog()
+    }
+
+    fun reset(context: Context) = synchronized(lock) {
+        Prefs.getDiagnosticsPrefs(context).edit().remove(PREF_DIAGNOSTICS_ALARM_DELIVERIES).apply()
+    }
+
+    fun toJsonElement(log: DeliveryLog): JsonElement = json.encodeToJsonElement(log.recorded)
+}
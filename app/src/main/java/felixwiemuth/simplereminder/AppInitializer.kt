@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder
+
+import android.app.AlarmManager
+import android.app.PendingIntent
+import android.content.Context
+import android.content.Intent
+import android.os.Build
+import android.util.Log
+import androidx.preference.PreferenceManager
+import felixwiemuth.simplereminder.util.BackgroundExecutor
+import java.util.EnumSet
+
+/**
+ * Performs the initialization of the application on demand instead of on every process start.
+ * Each app component declares with its [Component] which [Task]s it depends on, so that, for example,
+ * a process started only to deliver an alarm does not pay for rescheduling all reminders.
+ *
+ * Every task is executed at most once per process.
+ */
+object AppInitializer {
+    /**
+     * A part of the application's initialization.
+     */
+    enum class Task {
+        /**
+         * Set the default values of the settings and initialize the format version of the stored reminders.
+         */
+        PREFERENCES,
+
+        /**
+         * Create the notification channel (only has an effect from Android 8.0 on).
+         */
+        NOTIFICATION_CHANNEL,
+
+        /**
+         * Schedule all reminders and reshow due reminders (see [ReminderManager.scheduleAndReshowAllReminders]) if
+         * this has not been done since the last boot or since the app was force-stopped, otherwise make sure that the
+         * alarm maintenance is set (see [ReminderManager.performAlarmMaintenance]). Runs in the background.
+         */
+        RESCHEDULE_ALL
+    }
+
+    /**
+     * The entry points of the app together with the tasks they depend on.
+     */
+    enum class Component(vararg val requiredTasks: Task) {
+        /**
+         * [ReminderBroadcastReceiver]. An alarm can only be delivered if it was scheduled since the last boot and
+         * force-stop, so there is no need to reschedule.
+         */
+        ALARM_RECEIVER(Task.NOTIFICATION_CHANNEL),
+
+        /**
+         * [QuickTileService]. Only starts an activity, which initializes itself.
+         */
+        QUICK_TILE,
+
+        /**
+         * [felixwiemuth.simplereminder.ui.NextRemindersWidgetProvider]. Only reads the stored reminders.
+         */
+        WIDGET,
+
+        /**
+         * Activities. Starting an activity is the only way for the app to become active again after it was force-stopped.
+         */
+        UI(Task.PREFERENCES, Task.NOTIFICATION_CHANNEL, Task.RESCHEDULE_ALL),
+
+        /**
+         * [TimeChangeReceiver]. Due reminders may be shown when the time jumped forward.
+         */
+        TIME_CHANGE(Task.NOTIFICATION_CHANNEL),
+
+        /**
+         * [BootReceiver] before the device is unlocked for the first time after boot, when only device-protected
+         * storage is accessible.
+         */
+        LOCKED_BOOT(Task.NOTIFICATION_CHANNEL),
+
+        /**
+         * [BootReceiver].
+         */
+        BOOT(Task.PREFERENCES, Task.NOTIFICATION_CHANNEL, Task.RESCHEDULE_ALL)
+    }
+
+    /**
+     * Intent action of the scheduling sentinel, see [isSchedulingIntact].
+     */
+    const val ACTION_SCHEDULING_SENTINEL = "felixwiemuth.simplereminder.action.SCHEDULING_SENTINEL"
+
+    /**
+     * Request code of the scheduling sentinel's pending intent. Reminder request codes are non-negative.
+     */
+    private const val REQUEST_CODE_SCHEDULING_SENTINEL = -1
+
+    /**
+     * How far in the future the scheduling sentinel is set. It is not meant to go off.
+     */
+    private const val SCHEDULING_SENTINEL_DELAY = 10 * 365 * AlarmManager.INTERVAL_DAY
+
+    /**
+     * Tasks which have been executed (or, for background tasks, submitted) in this process.
+     */
+    private val startedTasks: MutableSet<Task> = EnumSet.noneOf(Task::class.java)
+
+    /**
+     * Execute those tasks required by the given component which have not been executed yet in this process.
+     * Background tasks are submitted to the [BackgroundExecutor].
+     *
+     * @param onComplete if given, is called (on a background thread) when all tasks required by the component have completed
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun initialize(context: Context, component: Component, onComplete: (() -> Unit)? = null) {
+        val appContext = context.applicationContext
+        for (task in component.requiredTasks) {
+            if (!markStarted(task)) {
+                continue
+            }
+            when (task) {
+                Task.PREFERENCES -> {
+                    // Read again, so that the defaults of preferences added in an update are set for existing installations
+                    PreferenceManager.setDefaultValues(appContext, R.xml.preferences, true)
+                    Prefs.getStoredRemindersListFormatVersion(appContext) // Initialize if not set
+                }
+                Task.NOTIFICATION_CHANNEL -> ReminderManager.createNotificationChannel(appContext)
+                Task.RESCHEDULE_ALL -> BackgroundExecutor.execute {
+                    ReminderStorage.ensureScheduleMirror(appContext)
+                    if (!isSchedulingIntact(appContext)) {
+                        rescheduleAll(appContext)
+                    } else {
+                        ReminderManager.ensureAlarmMaintenance(appContext)
+                    }
+                    if (!AlarmRegistry.isComplete(appContext)) {
+                        ReminderManager.completeAlarmRegistry(appContext)
+                    }
+                }
+            }
+        }
+        // Tasks on the executor are run in order, so this runs after the tasks submitted above (or by other components before)
+        onComplete?.let { BackgroundExecutor.execute(it) }
+    }
+
+    /**
+     * Handle the scheduling sentinel going off (which should practically not happen): reschedule all reminders and
+     * set a new sentinel.
+     */
+    fun onSchedulingSentinel(context: Context, onComplete: () -> Unit) {
+        val appContext = context.applicationContext
+        BackgroundExecutor.execute {
+            rescheduleAll(appContext)
+            onComplete()
+        }
+    }
+
+    private fun markStarted(task: Task): Boolean = synchronized(startedTasks) { startedTasks.add(task) }
+
+    /**
+     * Reschedule all reminders and show due reminders, then set the scheduling sentinel.
+     */
+    private fun rescheduleAll(context: Context) {
+        // This ensures that reminders are scheduled and re-shown after reboot (if this is enabled in settings) and when
+        // starting the app again after a force-close which cancels AlarmManager alarms and notifications.
+        ReminderManager.scheduleAndReshowAllReminders(context)
+        val alarmManager = context.getSystemService(Context.ALARM_SERVICE) as AlarmManager
+        alarmManager.set(
+            AlarmManager.RTC,
+            System.currentTimeMillis() + SCHEDULING_SENTINEL_DELAY,
+            makeSchedulingSentinelPendingIntent(context, 0)!!
+        )
+    }
+
+    /**
+     * Whether the alarms set by [rescheduleAll] still exist, i.e., the device has not been rebooted and the app has
+     * not been force-stopped since then. Both remove all alarms and pending intents of the app, including the
+     * far-future sentinel alarm which is checked here.
+     */
+    private fun isSchedulingIntact(context: Context): Boolean {
+        val intact = makeSchedulingSentinelPendingIntent(context, PendingIntent.FLAG_NO_CREATE) != null
+        if (intact) {
+            Log.d("Initialization", "Scheduling is intact, not rescheduling reminders")
+        }
+        return intact
+    }
+
+    private fun makeSchedulingSentinelPendingIntent(context: Context, flags: Int): PendingIntent? =
+        PendingIntent.getBroadcast(
+            context,
+            REQUEST_CODE_SCHEDULING_SENTINEL,
+            Intent(ACTION_SCHEDULING_SENTINEL).setClass(context, ReminderBroadcastReceiver::class.java),
+            // The flags must be equal when creating and looking up the pending intent
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) flags or PendingIntent.FLAG_IMMUTABLE else flags
+        )
+}
@@ -24,15 +24,34 @@ import android.content.Context
 import android.content.Intent
 import android.content.pm.PackageManager
 import androidx.core.content.ContextCompat
+import androidx.core.os.UserManagerCompat
+import felixwiemuth.simplereminder.util.BackgroundExecutor
 
 class BootReceiver : BroadcastReceiver() {
 
     /**
-     * This receiver does not do anything, but the corresponding broadcasts are received to execute code in [Main.onCreate],
-     * which is executed on every startup of the application.
+     * Schedules all reminders and reshows due reminders after boot (see [AppInitializer.Component.BOOT]). If the device
+     * is not unlocked yet, schedules them from device-protected storage instead (see
+     * [ReminderManager.scheduleFromDeviceProtectedStorage]), which is done again as usual after unlocking.
      */
     @SuppressLint("UnsafeProtectedBroadcastReceiver")
     override fun onReceive(context: Context, intent: Intent) {
+        val pendingResult = goAsync()
+        if (UserManagerCompat.isUserUnlocked(context)) {
+            AppInitializer.initialize(context, AppInitializer.Component.BOOT) {
+                StorageStats.persistAndFinish(context, pendingResult)
+            }
+        } else {
+            AppInitializer.initialize(context, AppInitializer.Component.LOCKED_BOOT)
+            val appContext = context.applicationContext
+            BackgroundExecutor.execute {
+                try {
+                    ReminderManager.scheduleFromDeviceProtectedStorage(appContext)
+                } finally {
+                    pendingResult.finish()
+                }
+            }
+        }
     }
 
     companion object {
@@ -18,8 +18,7 @@ package felixwiemuth.simplereminder
 
 import android.app.Application
 import android.content.Context
-import androidx.preference.PreferenceManager
-import felixwiemuth.simplereminder.ReminderManager.createNotificationChannel
+import androidx.core.os.UserManagerCompat
 import felixwiemuth.simplereminder.ui.util.UIUtils
 import org.acra.config.dialog
 import org.acra.config.mailSender
@@ -27,23 +26,16 @@ import org.acra.ktx.initAcra
 
 class Main : Application() {
     // Note: This is run before any app component starts, i.e., also when starting the app via "Add reminder" or the service.
-    override fun onCreate() {
-        super.onCreate()
-
-        PreferenceManager.setDefaultValues(this, R.xml.preferences, true)
-        Prefs.getStoredRemindersListFormatVersion(this) // Initialize if not set
-        createNotificationChannel(this)
-
-        // Reschedule reminders and show due reminders on app startup. This ensures that reminders are scheduled and re-shown
-        // automatically after reboot (if this is enabled in settings) and when starting the app again after a force-close which cancels
-        // AlarmManager alarms and notifications.
-        // This might also be called in situations where it is not necessary, for example after the system or user killed the app process
-        // without cancelling notifications and alarms. However, there is no handy way of detecting whether this is the case.
-        ReminderManager.scheduleAndReshowAllReminders(this)
-    }
+    // Initialization is therefore not done here but by each component with [AppInitializer] according to what it needs.
+    // For example, a process started to deliver an alarm does not have to reschedule all reminders.
 
     override fun attachBaseContext(base: Context) {
         super.attachBaseContext(base)
+        // Before the device is unlocked after boot (when receivers are started to schedule reminders), ACRA cannot
+        // access its settings in credential-protected storage
+        if (!UserManagerCompat.isUserUnlocked(base)) {
+            return
+        }
         initAcra {
             buildConfigClass = BuildConfig::class.java
             mailSender {
@@ -58,6 +50,14 @@ class Main : Application() {
         }
     }
 
+    override fun onTrimMemory(level: Int) {
+        super.onTrimMemory(level)
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            // The process may be ended any time now
+            StorageStats.persist(this)
+        }
+    }
+
     companion object {
         /**
          * The current (newest) version of storing reminders in [Prefs].
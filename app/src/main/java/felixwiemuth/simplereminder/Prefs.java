@@ -34,8 +34,13 @@ import android.widget.Toast;
 import androidx.annotation.RequiresApi;
 import androidx.annotation.StringRes;
 import androidx.core.app.ActivityCompat;
+import androidx.core.content.ContextCompat;
 import androidx.preference.PreferenceManager;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Stores preferences and current status of the app.
  *
@@ -55,21 +60,69 @@ public class Prefs {
      */
     private static final String PREFS_STATE = "state";
 
+    /**
+     * Name of preferences that store diagnostic data, like performance counters.
+     */
+    private static final String PREFS_DIAGNOSTICS = "diagnostics";
+
+    /**
+     * Name of preferences that store the reminder templates, see {@link TemplateStorage}.
+     */
+    private static final String PREFS_TEMPLATES = "templates";
+
+    /**
+     * Name of preferences that store the snapshot of the next reminders, see {@link ReminderStorage#getNextReminders}.
+     * Kept separately from the state preferences so that it can be read without loading all reminders.
+     */
+    private static final String PREFS_NEXT_REMINDERS = "nextReminders";
+
+    /**
+     * Name of preferences that store the alarms and notifications of reminders, see {@link AlarmRegistry}.
+     */
+    private static final String PREFS_ALARM_REGISTRY = "alarmRegistry";
+
+    /**
+     * Name of preferences in device-protected storage that store what is needed to schedule the reminders before the
+     * device is unlocked for the first time after boot, see {@link ReminderStorage#getScheduleMirror}.
+     */
+    private static final String PREFS_SCHEDULE = "schedule";
+
     /**
      * The version of the format reminders are saved at key {@link #PREF_STATE_CURRENT_REMINDERS}.
      */
     private static final String PREF_STATE_REMINDERS_FORMAT_VERSION = "remindersFormatVersion";
 
     /**
-     * The next ID for a reminder.
+     * The lowest reminder ID which has never been used.
      */
     static final String PREF_STATE_NEXTID = "nextid";
 
+    /**
+     * Where the search for a recyclable reminder ID continues, see {@link felixwiemuth.simplereminder.data.ReminderIdAllocator}.
+     */
+    static final String PREF_STATE_ID_CURSOR = "idCursor";
+
+    /**
+     * JSON-serialized list of recently freed reminder IDs, see {@link felixwiemuth.simplereminder.data.ReminderIdAllocator}.
+     */
+    static final String PREF_STATE_FREED_IDS = "freedIds";
+
+    /**
+     * Base64-encoded bitmap of recyclable reminder IDs, see {@link felixwiemuth.simplereminder.data.ReminderIdAllocator}.
+     */
+    static final String PREF_STATE_RECYCLABLE_IDS = "recyclableIds";
+
     /**
      * GSON-serialized list of {@link felixwiemuth.simplereminder.data.Reminder}s.
      */
     static final String PREF_STATE_CURRENT_REMINDERS = "reminders";
 
+    /**
+     * The end of the time range in which scheduled reminders have been registered with exact alarms, see
+     * {@link ReminderManager#performAlarmMaintenance}.
+     */
+    private static final String PREF_STATE_ALARM_HORIZON_END = "alarmHorizonEnd";
+
     /**
      * Indicates whether the list of reminders {@link #PREF_STATE_CURRENT_REMINDERS} has been updated.
      */
@@ -83,10 +136,45 @@ public class Prefs {
 
     public static final int PERMISSION_REQUEST_CODE_BOOT = 1;
 
+    /**
+     * Maximum number of snooze durations, as notifications show at most three actions.
+     */
+    public static final int MAX_SNOOZE_DURATIONS = 3;
+
+    /**
+     * Maximum snooze duration in minutes (30 days).
+     */
+    public static final int MAX_SNOOZE_DURATION_MINUTES = 30 * 24 * 60;
+
     static SharedPreferences getStatePrefs(Context context) {
         return context.getSharedPreferences(PREFS_STATE, MODE_PRIVATE);
     }
 
+    static SharedPreferences getDiagnosticsPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_DIAGNOSTICS, MODE_PRIVATE);
+    }
+
+    static SharedPreferences getTemplatesPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_TEMPLATES, MODE_PRIVATE);
+    }
+
+    static SharedPreferences getNextRemindersPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_NEXT_REMINDERS, MODE_PRIVATE);
+    }
+
+    static SharedPreferences getAlarmRegistryPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_ALARM_REGISTRY, MODE_PRIVATE);
+    }
+
+    /**
+     * Get the preferences in device-protected storage (from Android 7.0 on), which are available before the device is
+     * unlocked for the first time after boot.
+     */
+    static SharedPreferences getSchedulePrefs(Context context) {
+        Context storageContext = ContextCompat.createDeviceProtectedStorageContext(context);
+        return (storageContext != null ? storageContext : context).getSharedPreferences(PREFS_SCHEDULE, MODE_PRIVATE);
+    }
+
     public static boolean isRemindersUpdated(Context context) {
         return getStatePrefs(context).getBoolean(PREF_STATE_REMINDERS_UPDATED, false);
     }
@@ -121,6 +209,14 @@ public class Prefs {
         }
     }
 
+    static long getAlarmHorizonEnd(Context context) {
+        return getStatePrefs(context).getLong(PREF_STATE_ALARM_HORIZON_END, 0);
+    }
+
+    static void setAlarmHorizonEnd(Context context, long time) {
+        getStatePrefs(context).edit().putLong(PREF_STATE_ALARM_HORIZON_END, time).apply();
+    }
+
     public static boolean isAddReminderDialogUsed(Context context) {
         return getStatePrefs(context).getBoolean(PREF_STATE_ADD_REMINDER_DIALOG_USED, false);
     }
@@ -217,6 +313,48 @@ public class Prefs {
         return Integer.parseInt(getStringPref(R.string.prefkey_nagging_repeat_interval, "1", context));
     }
 
+    /**
+     * Get the durations (in minutes) offered to snooze a reminder from its notification.
+     *
+     * @param context
+     * @return
+     */
+    public static List<Integer> getSnoozeDurations(Context context) {
+        try {
+            return parseSnoozeDurations(getStringPref(R.string.prefkey_snooze_durations, "10,60", context));
+        } catch (IllegalArgumentException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Parse a comma-separated list of snooze durations in minutes. An empty string means no durations.
+     *
+     * @param value
+     * @return
+     * @throws IllegalArgumentException if an entry is not a positive number, an entry is greater than {@link #MAX_SNOOZE_DURATION_MINUTES} or there are more than {@link #MAX_SNOOZE_DURATIONS} entries
+     */
+    public static List<Integer> parseSnoozeDurations(String value) throws IllegalArgumentException {
+        List<Integer> durations = new ArrayList<>();
+        if (value.trim().isEmpty()) {
+            return durations;
+        }
+        for (String entry : value.split(",")) {
+            int minutes = Integer.parseInt(entry.trim()); // NumberFormatException is an IllegalArgumentException
+            if (minutes <= 0) {
+                throw new IllegalArgumentException("Snooze duration must be positive: " + minutes);
+            }
+            if (minutes > MAX_SNOOZE_DURATION_MINUTES) {
+                throw new IllegalArgumentException("Snooze duration must be at most " + MAX_SNOOZE_DURATION_MINUTES + " minutes: " + minutes);
+            }
+            durations.add(minutes);
+        }
+        if (durations.size() > MAX_SNOOZE_DURATIONS) {
+            throw new IllegalArgumentException("At most " + MAX_SNOOZE_DURATIONS + " snooze durations are allowed");
+        }
+        return durations;
+    }
+
     public static int getReminderDialogTimePickerTextSize(Context context) {
         return Integer.parseInt(getStringPref(R.string.prefkey_reminder_dialog_timepicker_text_size, String.valueOf(Defaults.REMINDER_DIALOG_TIMEPICKER_TEXTSIZE), context));
     }
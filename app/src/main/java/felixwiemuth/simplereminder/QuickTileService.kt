@@ -29,6 +29,7 @@ class QuickTileService : TileService() {
     @SuppressLint("StartActivityAndCollapseDeprecated")
     override fun onClick() {
         super.onClick()
+        AppInitializer.initialize(this, AppInitializer.Component.QUICK_TILE)
 
         val intent = Intent(this, AddReminderDialogActivity::class.java)
             // Independently start activity, but if it already exists, navigate to it
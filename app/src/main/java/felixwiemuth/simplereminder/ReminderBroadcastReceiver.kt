@@ -20,11 +20,45 @@ package felixwiemuth.simplereminder
 import android.content.BroadcastReceiver
 import android.content.Context
 import android.content.Intent
+import androidx.core.os.UserManagerCompat
+import felixwiemuth.simplereminder.util.BackgroundExecutor
 
 class ReminderBroadcastReceiver : BroadcastReceiver() {
 
     override fun onReceive(context: Context, intent: Intent) {
+        if (intent.action == AppInitializer.ACTION_SCHEDULING_SENTINEL) {
+            val pendingResult = goAsync()
+            AppInitializer.onSchedulingSentinel(context) { StorageStats.persistAndFinish(context, pendingResult) }
+            return
+        }
+        AppInitializer.initialize(context, AppInitializer.Component.ALARM_RECEIVER)
+        if (!UserManagerCompat.isUserUnlocked(context)) {
+            // Only alarms set from device-protected storage can go off before the device is unlocked after boot
+            if (intent.action == null) {
+                ReminderManager.runLockedAction(context, ReminderManager.ReminderAction.fromIntent(intent))
+            }
+            return
+        }
+        if (intent.action == ReminderManager.ACTION_ALARM_MAINTENANCE) {
+            val pendingResult = goAsync()
+            BackgroundExecutor.execute {
+                try {
+                    ReminderManager.performAlarmMaintenance(context.applicationContext)
+                } finally {
+                    StorageStats.persistAndFinish(context.applicationContext, pendingResult)
+                }
+            }
+            return
+        }
+        val action = ReminderManager.ReminderAction.fromIntent(intent)
+        action.recordAlarmDelivery(context, intent)
+        if (action is ReminderManager.ReminderAction.Snooze) {
+            val pendingResult = goAsync()
+            ReminderManager.snoozeReminder(context, action) { StorageStats.persistAndFinish(context, pendingResult) }
+            return
+        }
         // All actions should with a reasonable storage size be fast enough to execute in the allowed 10 seconds for this method.
-        ReminderManager.processReminderAction(context, intent)
+        action.run(context)
+        StorageStats.persist(context)
     }
 }
\ No newline at end of file
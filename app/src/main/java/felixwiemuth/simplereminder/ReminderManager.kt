@@ -30,11 +30,20 @@ import android.os.Bundle
 import android.util.Log
 import androidx.core.app.NotificationCompat
 import androidx.core.app.NotificationManagerCompat
+import felixwiemuth.simplereminder.ReminderScheduler.AlarmKind
+import felixwiemuth.simplereminder.ReminderScheduler.Companion.ALARM_HORIZON
+import felixwiemuth.simplereminder.ReminderScheduler.NotificationKind
 import felixwiemuth.simplereminder.data.Reminder
 import felixwiemuth.simplereminder.data.Reminder.Status
 import felixwiemuth.simplereminder.ui.EditReminderDialogActivity
+import felixwiemuth.simplereminder.ui.NextRemindersWidgetProvider
 import felixwiemuth.simplereminder.util.AlarmManagerUtil
+import felixwiemuth.simplereminder.util.AlarmManagerUtil.AlarmApi
+import felixwiemuth.simplereminder.util.BackgroundExecutor
+import felixwiemuth.simplereminder.util.Clock
+import felixwiemuth.simplereminder.util.DateTimeUtil
 import kotlinx.serialization.Serializable
+import kotlinx.serialization.Transient
 import kotlinx.serialization.decodeFromString
 import kotlinx.serialization.encodeToString
 import kotlinx.serialization.json.Json
@@ -59,6 +68,32 @@ object ReminderManager {
         return OFFSET_REQUEST_CODE_ADD_REMINDER_DIALOG_ACTIVITY_PENDING_INTENT + reminderID
     }
 
+    /**
+     * Start of the request codes of [ReminderAction.Snooze] pending intents, following those of
+     * [getRequestCodeEditReminderDialogActivityPendingIntent].
+     */
+    private const val OFFSET_REQUEST_CODE_SNOOZE = 2 * (Reminder.MAX_REMINDER_ID + 1)
+
+    /**
+     * Intent action of the alarm maintenance, see [performAlarmMaintenance].
+     */
+    const val ACTION_ALARM_MAINTENANCE = "felixwiemuth.simplereminder.action.ALARM_MAINTENANCE"
+
+    /**
+     * Request code of the alarm maintenance's pending intent (the scheduling sentinel uses -1).
+     */
+    private const val REQUEST_CODE_ALARM_MAINTENANCE = -2
+
+    /**
+     * Source of the current time for scheduling and marking reminders done. Only to be replaced in tests.
+     */
+    var clock: Clock = Clock.SYSTEM
+
+    /**
+     * Snoozes which have not been applied yet: the new due time by reminder ID.
+     */
+    private val pendingSnoozes = HashMap<Int, Long>()
+
     private var DEFAULT_SOUND: Uri? = null
         get() {
             if (field == null) {
@@ -100,45 +135,78 @@ object ReminderManager {
 
         /**
          * Mark the reminder done (set its status to [Status.DONE] and cancel any current
-         * notifications or scheduled actions).
+         * notifications or scheduled actions). A recurring reminder is instead scheduled for its
+         * next occurrence (see [Reminder.completed]).
          */
         @Serializable
         class MarkDone(override val reminderId: Int) : ReminderAction()
 
+        /**
+         * Remove the notification and schedule the reminder again the given number of minutes from now (see
+         * [snoozeReminder]).
+         *
+         * @param slot the position of the action on the notification (less than [Prefs.MAX_SNOOZE_DURATIONS]), to
+         * distinguish the pending intents of the actions
+         */
+        @Serializable
+        class Snooze(
+            override val reminderId: Int,
+            val minutes: Int,
+            @Transient private val slot: Int = 0
+        ) : ReminderAction() {
+            internal val requestCode: Int
+                get() = OFFSET_REQUEST_CODE_SNOOZE + reminderId / 2 * Prefs.MAX_SNOOZE_DURATIONS + slot
+        }
+
         fun toJson(): String = Json.encodeToString(this)
 
         companion object {
             private const val EXTRA_STRING_ACTION =
                 "felixwiemuth.simplereminder.ReminderManager.extra.ACTION"
+            private const val EXTRA_LONG_SCHEDULED_TIME =
+                "felixwiemuth.simplereminder.ReminderManager.extra.SCHEDULED_TIME"
+            private const val EXTRA_STRING_ALARM_API =
+                "felixwiemuth.simplereminder.ReminderManager.extra.ALARM_API"
 
             fun fromJson(serialized: String): ReminderAction = Json.decodeFromString(serialized)
+            fun fromIntent(intent: Intent): ReminderAction = fromJson(getSerializedReminderActionFromIntent(intent))
             fun getSerializedReminderActionFromIntent(intent: Intent): String =
                 requireNotNull(intent.getStringExtra(EXTRA_STRING_ACTION)) { "Intent does not contain extra $EXTRA_STRING_ACTION" }
         }
 
+        /**
+         * If the given intent of this action was delivered by an alarm (see [scheduleReminderAction]), record how late
+         * it was delivered (see [AlarmStats]).
+         */
+        fun recordAlarmDelivery(context: Context, intent: Intent) {
+            val api = intent.getStringExtra(EXTRA_STRING_ALARM_API) ?: return
+            val scheduled = intent.getLongExtra(EXTRA_LONG_SCHEDULED_TIME, -1)
+            if (scheduled >= 0) {
+                AlarmStats.recordDelivery(context, javaClass.simpleName, AlarmApi.valueOf(api), scheduled)
+            }
+        }
+
         /**
          * Run the action.
          */
         fun run(context: Context) {
-            val reminder = ReminderStorage.getReminder(context, reminderId)
+            val reminder by lazy { ReminderStorage.getReminder(context, reminderId) }
             when (this) {
                 is Notify -> {
-                    showReminder(context, reminder)
+                    AlarmRegistry.removeAlarm(context, reminderId) // The alarm has gone off
+                    scheduler(context).show(reminder)
                 }
                 is Nag -> {
-                    // Send the same notification again (replaces the previous)
-                    sendNotification(context, reminder, displayOriginalDueTime = Prefs.isDisplayOriginalDueTimeNag(context))
-                    // Schedule next repetition. This calculates the next occurrence based on the original due date which makes it
-                    // unnecessary to save it in the reminder action and in case the execution of this action is delayed more than
-                    // one repeat interval, this prevents showing all missed occurrences in a row.
-                    scheduleNextNag(context, reminder)
+                    AlarmRegistry.removeAlarm(context, reminderId)
+                    scheduler(context).nag(reminder)
                 }
                 is MarkDone -> {
                     // Cancel possible further alarms (nagging reminders)
                     cancelReminder(context, reminder.id)
-                    reminder.status = Status.DONE
-                    updateReminder(context, reminder, false)
+                    val completed = reminder.completed(clock.now())
+                    updateReminder(context, completed, completed.status == Status.SCHEDULED)
                 }
+                is Snooze -> snoozeReminder(context, this) {}
             }
         }
 
@@ -150,6 +218,7 @@ object ReminderManager {
             when (this) {
                 is Notify, is Nag -> reminderId
                 is MarkDone -> reminderId + 1
+                is Snooze -> requestCode
             }
 
         protected fun makePendingIntent(context: Context, extras: Bundle? = null): PendingIntent {
@@ -179,11 +248,15 @@ object ReminderManager {
          * Uses flag [PendingIntent.FLAG_CANCEL_CURRENT] to make sure no old intent is reused.
          *
          * @param context
+         * @param alarmTime if the pending intent is used for an alarm, the time it is scheduled for
+         * @param alarmApi if the pending intent is used for an alarm, the API used to schedule it
          * @return
          */
-        fun toPendingIntent(context: Context): PendingIntent {
+        fun toPendingIntent(context: Context, alarmTime: Long? = null, alarmApi: AlarmApi? = null): PendingIntent {
             val extras = Bundle().apply {
                 putString(EXTRA_STRING_ACTION, toJson())
+                alarmTime?.let { putLong(EXTRA_LONG_SCHEDULED_TIME, it) }
+                alarmApi?.let { putString(EXTRA_STRING_ALARM_API, it.name) }
             }
             return makePendingIntent(context, extras)
         }
@@ -206,69 +279,237 @@ object ReminderManager {
     }
 
     /**
-     * Schedule a reminder to be processed at its due time.
+     * Snooze the reminder of the given action: remove its notification and schedule it for the action's number of
+     * minutes from now. The snooze is applied on the [BackgroundExecutor], together with all other snoozes requested
+     * until then (e.g., from several notifications in a row) in one storage transaction.
+     *
+     * @param onComplete called (on a background thread) when the snooze has been applied
      */
-    private fun scheduleReminder(context: Context, reminder: Reminder) {
-        val action = ReminderAction.Notify(reminder.id)
-        AlarmManagerUtil.scheduleExact(context, reminder.date, action.toPendingIntent(context))
+    fun snoozeReminder(context: Context, action: ReminderAction.Snooze, onComplete: () -> Unit) {
+        val appContext = context.applicationContext
+        cancelNotification(appContext, action.reminderId)
+        synchronized(pendingSnoozes) {
+            // If there are pending snoozes, they have not been taken yet by the already submitted task
+            val applyPending = pendingSnoozes.isEmpty()
+            pendingSnoozes[action.reminderId] = clock.now() + action.minutes * 60_000L
+            if (applyPending) {
+                BackgroundExecutor.execute { applyPendingSnoozes(appContext) }
+            }
+        }
+        // Tasks on the executor are run in order, so this runs after the snooze has been applied
+        BackgroundExecutor.execute(onComplete)
+    }
+
+    private fun applyPendingSnoozes(context: Context) {
+        val snoozes = synchronized(pendingSnoozes) { HashMap(pendingSnoozes).also { pendingSnoozes.clear() } }
+        val snoozed = ReminderStorage.replaceReminders(context, snoozes.keys) {
+            it.snoozedUntil(snoozes.getValue(it.id))
+        }
+        AlarmRegistry.batch(context) {
+            // Replaces a possibly scheduled nag, which has the same request code
+            snoozed.forEach { rescheduleReminder(context, it) }
+        }
     }
 
+    /**
+     * Get the [ReminderScheduler] performing its effects on the system.
+     */
+    private fun scheduler(context: Context) = ReminderScheduler(clock, SystemPlatform(context))
+
+    /**
+     * Performs the effects of the [ReminderScheduler] with the [AlarmManager], notifications and [ReminderStorage].
+     * Alarms and notifications are recorded in the [AlarmRegistry], so that only changes call the system.
+     */
+    private class SystemPlatform(private val context: Context) : ReminderScheduler.Platform {
+        override fun setAlarm(reminderId: Int, kind: AlarmKind, time: Long) =
+            scheduleReminderAction(
+                context,
+                time,
+                when (kind) {
+                    AlarmKind.NOTIFY -> ReminderAction.Notify(reminderId)
+                    AlarmKind.NAG -> ReminderAction.Nag(reminderId)
+                }
+            )
+
+        override fun cancelAlarm(reminderId: Int) = cancelAlarm(context, reminderId)
+
+        override fun postNotification(reminder: Reminder, kind: NotificationKind) = when (kind) {
+            NotificationKind.DUE ->
+                sendNotification(context, reminder, displayOriginalDueTime = Prefs.isDisplayOriginalDueTimeNormal(context))
+            NotificationKind.NAG ->
+                sendNotification(context, reminder, displayOriginalDueTime = Prefs.isDisplayOriginalDueTimeNag(context))
+            NotificationKind.RESHOWN ->
+                sendNotification(context, reminder, silent = true, displayOriginalDueTime = Prefs.isDisplayOriginalDueTimeRecreate(context))
+        }
+
+        override fun cancelNotification(reminderId: Int) = cancelNotification(context, reminderId)
+
+        override fun storeReminder(reminder: Reminder) = ReminderStorage.updateReminder(context, reminder)
+
+        override var alarmHorizonEnd: Long
+            get() = Prefs.getAlarmHorizonEnd(context)
+            set(value) = Prefs.setAlarmHorizonEnd(context, value)
+
+        override fun setAlarmMaintenance(time: Long) = scheduleAlarmMaintenance(context, time)
+    }
+
+    /**
+     * Schedule a reminder to be processed at its due time, if it is due within [ALARM_HORIZON]. Otherwise, it is
+     * scheduled by [performAlarmMaintenance] later.
+     *
+     * @return whether an alarm was set
+     */
+    private fun scheduleReminder(context: Context, reminder: Reminder): Boolean = scheduler(context).schedule(reminder)
+
+    /**
+     * Perform the alarm maintenance on the stored reminders (see [ReminderScheduler.performAlarmMaintenance]).
+     */
+    fun performAlarmMaintenance(context: Context) {
+        AlarmRegistry.batch(context) {
+            scheduler(context).performAlarmMaintenance(ReminderStorage.getReminders(context))
+        }
+    }
+
+    /**
+     * Update what depends on the wall-clock time or the time zone after one of them changed, in one pass:
+     * - if the wall-clock time changed, the next nags of due nagging reminders, which follow the reminders' due times,
+     *   and, if the time jumped forward beyond or back before the alarm horizon (see [performAlarmMaintenance]), the
+     *   alarms within the horizon;
+     * - the presentation of reminders relative to the current day, i.e., the day sections of the list and the widget.
+     *
+     * The alarms of scheduled reminders are set for absolute times and are therefore not affected.
+     *
+     * @param wallClockChanged whether the wall-clock time changed (as opposed to only the time zone)
+     */
+    fun onClockChanged(context: Context, wallClockChanged: Boolean) {
+        // The due reminders are in the snapshot, so that not all reminders have to be loaded
+        val nextReminders = ReminderStorage.getNextReminders(context)
+        if (wallClockChanged) {
+            val scheduler = scheduler(context)
+            AlarmRegistry.batch(context) {
+                nextReminders.due.filter { it.isNagging }.forEach { scheduler.scheduleNextNag(it) }
+            }
+            // Otherwise the next regular maintenance is early enough
+            if (scheduler.onWallClockChanged()) {
+                performAlarmMaintenance(context)
+            }
+        }
+        NextRemindersWidgetProvider.updateWidgets(context, nextReminders)
+        ReminderStorage.notifyRemindersChangedBroadcast(context)
+    }
+
+    /**
+     * Set the alarm maintenance if it is not set (e.g., after an update of the app from a version without it).
+     */
+    fun ensureAlarmMaintenance(context: Context) {
+        if (makeAlarmMaintenancePendingIntent(context, PendingIntent.FLAG_NO_CREATE) == null) {
+            scheduleAlarmMaintenance(context, clock.now() + ReminderScheduler.ALARM_MAINTENANCE_INTERVAL)
+        }
+    }
+
+    private fun scheduleAlarmMaintenance(context: Context, time: Long) {
+        val alarmManager = context.getSystemService(Context.ALARM_SERVICE) as AlarmManager
+        // Inexact from API 19 on, which is sufficient and allows the system to batch it with other alarms
+        alarmManager.set(
+            AlarmManager.RTC_WAKEUP,
+            time,
+            makeAlarmMaintenancePendingIntent(context, PendingIntent.FLAG_UPDATE_CURRENT)!!
+        )
+    }
+
+    private fun makeAlarmMaintenancePendingIntent(context: Context, flags: Int): PendingIntent? =
+        PendingIntent.getBroadcast(
+            context,
+            REQUEST_CODE_ALARM_MAINTENANCE,
+            Intent(ACTION_ALARM_MAINTENANCE).setClass(context, ReminderBroadcastReceiver::class.java),
+            // The flags must be equal when creating and looking up the pending intent
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) flags or PendingIntent.FLAG_IMMUTABLE else flags
+        )
+
     /**
      * Cancel a reminder, i.e., cancel if scheduled, remove notification if present.
      */
     private fun cancelReminder(context: Context, id: Int) {
-        // Cancel possible notification
-        val notificationManager = NotificationManagerCompat.from(context)
-        notificationManager.cancel(id)
+        cancelNotification(context, id)
+        cancelAlarm(context, id)
+    }
 
-        // Cancel possibly scheduled alarm
-        val alarmManager = context.getSystemService(Context.ALARM_SERVICE) as AlarmManager
-        alarmManager.cancel(ReminderAction.Notify(id).getCancelPendingIntent(context))
+    /**
+     * Remove the notification of a reminder, if one is registered in the [AlarmRegistry] or the registry is not
+     * complete.
+     */
+    private fun cancelNotification(context: Context, id: Int) {
+        if (AlarmRegistry.removeNotification(context, id) || !AlarmRegistry.isComplete(context)) {
+            NotificationManagerCompat.from(context).cancel(id)
+        }
+    }
+
+    /**
+     * Cancel the alarm of a reminder, if one is registered in the [AlarmRegistry] or the registry is not complete.
+     */
+    private fun cancelAlarm(context: Context, id: Int) {
+        if (AlarmRegistry.removeAlarm(context, id) || !AlarmRegistry.isComplete(context)) {
+            val alarmManager = context.getSystemService(Context.ALARM_SERVICE) as AlarmManager
+            alarmManager.cancel(ReminderAction.Notify(id).getCancelPendingIntent(context))
+        }
     }
 
 
     /**
-     * Show the reminder and update its status. Should be used on due reminders.
-     * Schedules the next nag event if the reminder is nagging.
-     *
-     * @param context
-     * @param reminder
+     * Set an alarm to perform the given action at the given time, replacing a previous alarm of the reminder, unless
+     * the [AlarmRegistry] shows that exactly this alarm is already set.
      */
-    private fun showReminder(context: Context, reminder: Reminder) {
-        sendNotification(context, reminder, displayOriginalDueTime = Prefs.isDisplayOriginalDueTimeNormal(context))
-        reminder.status = Status.NOTIFIED
-        updateReminder(context, reminder, false)
-        if (reminder.isNagging) {
-            scheduleNextNag(context, reminder)
+    private fun scheduleReminderAction(context: Context, time: Long, action: ReminderAction) {
+        val alarm = AlarmRegistry.Alarm(action.javaClass.simpleName, time)
+        if (AlarmRegistry.getAlarm(context, action.reminderId) == alarm) {
+            return
         }
+        setAlarm(context, Date(time), action)
+        AlarmRegistry.putAlarm(context, action.reminderId, alarm)
     }
 
-    private fun scheduleReminderAction(context: Context, date: Date, action: ReminderAction) {
-        AlarmManagerUtil.scheduleExact(context, date, action.toPendingIntent(context))
+    private fun setAlarm(context: Context, date: Date, action: ReminderAction) {
+        val api = AlarmManagerUtil.getExactAlarmApi(context)
+        AlarmManagerUtil.schedule(context, api, date, action.toPendingIntent(context, date.time, api))
     }
 
     /**
-     * Schedule the next [ReminderAction.Nag] action for a nagging reminder
-     * at the next occurrence in the future according to its original schedule.
+     * Schedule and show the reminders from their copy in device-protected storage (see
+     * [ReminderStorage.getScheduleMirror]), while the device has not been unlocked since boot and the reminders
+     * themselves are not accessible. Due reminders are shown without their texts (see [sendLockedNotification]).
+     * Nothing is stored (in particular not in the [AlarmRegistry]); all reminders are scheduled and shown again as
+     * usual when the device has been unlocked (see [AppInitializer.Component.BOOT]).
      */
-    private fun scheduleNextNag(context: Context, reminder: Reminder) {
-        assert(reminder.isNagging)
-        val nextNagTime = calculateNextNagTime(reminder)
-        scheduleReminderAction(context, Date(nextNagTime), ReminderAction.Nag(reminder.id))
+    fun scheduleFromDeviceProtectedStorage(context: Context) {
+        val now = clock.now()
+        for (r in ReminderStorage.getScheduleMirror(context)) {
+            when (r.status) {
+                Status.SCHEDULED -> if (r.time <= now) {
+                    showLocked(context, r)
+                } else if (r.time < now + ALARM_HORIZON) {
+                    setAlarm(context, r.date, ReminderAction.Notify(r.id))
+                }
+                Status.NOTIFIED -> showLocked(context, r)
+                Status.DONE -> {}
+            }
+        }
     }
 
     /**
-     * Calculate the next occurrence of a nagging reminder in the future based on its original due date.
+     * Run the given action while the device has not been unlocked since boot (see [scheduleFromDeviceProtectedStorage]).
+     * Only alarms are handled; the actions of notifications are not available before unlocking.
      */
-    private fun calculateNextNagTime(reminder: Reminder): Long {
-        assert(reminder.isNagging)
-        val d = reminder.naggingRepeatIntervalInMillis
-        val now = System.currentTimeMillis()
-        val sinceDue = now - reminder.date.time
-        val sinceLastNag = sinceDue % d
-        val untilNextNag = d - sinceLastNag
-        val nextNag = now + untilNextNag
-        return nextNag
+    fun runLockedAction(context: Context, action: ReminderAction) {
+        if (action is ReminderAction.Notify || action is ReminderAction.Nag) {
+            ReminderStorage.getScheduleMirror(context).find { it.id == action.reminderId }?.let { showLocked(context, it) }
+        }
+    }
+
+    private fun showLocked(context: Context, reminder: Reminder) {
+        sendLockedNotification(context, reminder.id)
+        if (reminder.isNagging) {
+            setAlarm(context, Date(scheduler(context).nextNagTime(reminder)), ReminderAction.Nag(reminder.id))
+        }
     }
 
     /**
@@ -297,7 +538,7 @@ object ReminderManager {
             NOTIFICATION_CHANNEL_REMINDER
         ).also {
             if (displayOriginalDueTime)
-                it.setWhen(reminder.date.time).setShowWhen(true)
+                it.setWhen(reminder.time).setShowWhen(true)
         }
             .setSilent(silent)
             .setSmallIcon(android.R.drawable.ic_lock_idle_alarm)
@@ -306,6 +547,15 @@ object ReminderManager {
             .setStyle(NotificationCompat.BigTextStyle().bigText(reminder.text))
             .setContentIntent(editReminderPendingIntent)
             .setDeleteIntent(markDoneIntent)
+            .also {
+                Prefs.getSnoozeDurations(context).forEachIndexed { slot, minutes ->
+                    it.addAction(
+                        0,
+                        context.getString(R.string.notification_action_snooze, formatSnoozeDuration(context, minutes)),
+                        ReminderAction.Snooze(reminder.id, minutes, slot).toPendingIntent(context)
+                    )
+                }
+            }
             .setCategory(NotificationCompat.CATEGORY_REMINDER)
             // Applies for Android < 8
             .setPriority(
@@ -328,11 +578,36 @@ object ReminderManager {
             || context.checkSelfPermission(Manifest.permission.POST_NOTIFICATIONS) == PackageManager.PERMISSION_GRANTED
         ) {
             notificationManager.notify(reminder.id, builder.build())
+            AlarmRegistry.putNotification(context, reminder.id)
+        } else {
+            Log.e("Notifications", "Cannot send notification for reminder: permission not granted.")
+        }
+    }
+
+    /**
+     * Send a notification for a due reminder without its text and actions, as shown before the device is unlocked for
+     * the first time after boot. It is replaced by the usual notification after unlocking.
+     */
+    private fun sendLockedNotification(context: Context, id: Int) {
+        val builder = NotificationCompat.Builder(context, NOTIFICATION_CHANNEL_REMINDER)
+            .setSmallIcon(android.R.drawable.ic_lock_idle_alarm)
+            .setContentTitle(context.getString(R.string.notification_title))
+            .setContentText(context.getString(R.string.notification_text_locked))
+            .setCategory(NotificationCompat.CATEGORY_REMINDER)
+            .setPriority(NotificationCompat.PRIORITY_HIGH)
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU // Permission was added in API 33
+            || context.checkSelfPermission(Manifest.permission.POST_NOTIFICATIONS) == PackageManager.PERMISSION_GRANTED
+        ) {
+            NotificationManagerCompat.from(context).notify(id, builder.build())
         } else {
             Log.e("Notifications", "Cannot send notification for reminder: permission not granted.")
         }
     }
 
+    fun formatSnoozeDuration(context: Context, minutes: Int): String =
+        DateTimeUtil.Duration((minutes / 60).toLong(), minutes % 60)
+            .toString(DateTimeUtil.Duration.Resolution.MINUTES, DateTimeUtil.Duration.RoundingMode.DOWN, context)
+
     /**
      * Add the reminder described by the given builder and schedule it.
      * A new ID is assigned by the store.
@@ -385,7 +660,7 @@ object ReminderManager {
     fun updateReminders(context: Context, reminders: Iterable<Reminder>, reschedule: Boolean) {
         ReminderStorage.updateReminders(context, reminders)
         if (reschedule) {
-            reminders.forEach { rescheduleReminder(context, it) }
+            AlarmRegistry.batch(context) { reminders.forEach { rescheduleReminder(context, it) } }
         }
     }
 
@@ -399,50 +674,116 @@ object ReminderManager {
      */
     fun updateReminders(
         context: Context,
-        transformation: (Reminder) -> Unit,
+        transformation: (Reminder) -> Reminder,
         ids: Set<Int>,
         reschedule: Boolean
     ) {
-        val updated = ReminderStorage.updateReminders(context, transformation, ids)
+        val updated = ReminderStorage.replaceReminders(context, ids, transformation)
         if (reschedule) {
-            updated.forEach { rescheduleReminder(context, it) }
+            AlarmRegistry.batch(context) { updated.forEach { rescheduleReminder(context, it) } }
         }
     }
 
+    /**
+     * Mark the reminders with the given IDs as done (see [Reminder.completed]) and update their scheduling, so that
+     * recurring reminders are scheduled for their next occurrence.
+     *
+     * @param context
+     * @param ids
+     */
+    fun markRemindersDone(context: Context, ids: Set<Int>) {
+        val now = clock.now()
+        updateReminders(context, { it.completed(now) }, ids, true)
+    }
+
     /**
      * Cancel potential existing scheduling and notification for the given reminder and reschedule it if its status is [Status.SCHEDULED] and its time is in the future.
+     * Only calls the system where this changes something, so that, e.g., rescheduling a reminder whose time did not change does nothing (see [AlarmRegistry]).
      *
      * @param context
      * @param reminder
      */
-    private fun rescheduleReminder(context: Context, reminder: Reminder) {
-        cancelReminder(context, reminder.id)
-        val isFuture = reminder.date.time > System.currentTimeMillis()
-        if (reminder.status === Status.SCHEDULED && isFuture) {
-            scheduleReminder(context, reminder)
-        }
-    }
+    private fun rescheduleReminder(context: Context, reminder: Reminder) = scheduler(context).reschedule(reminder)
 
     /**
-     * Schedule all future reminders and show all due, but not yet notified, reminders.
-     * Schedule also the next nag for due nagging reminders.
+     * Schedule all future reminders within [ALARM_HORIZON] and show all due, but not yet notified, reminders.
+     * Schedule also the next nag for due nagging reminders and the next alarm maintenance (see [performAlarmMaintenance]).
      * If some of the reminders are already scheduled, the new registration should replace the previous.
      * Due reminders are re-shown silently.
+     * Must only be called when all alarms and notifications have been removed by the system (after boot or force-stop),
+     * as the [AlarmRegistry] is cleared.
      *
      * @param context
      */
     @JvmStatic
     fun scheduleAndReshowAllReminders(context: Context) {
         Log.d("SchedulingShowing", "Rescheduling all alarms and reshowing all notifications")
-        val currentTime = System.currentTimeMillis()
-        for (r in ReminderStorage.getReminders(context)) {
-            when (r.status) {
-                Status.SCHEDULED -> if (r.date.time <= currentTime) showReminder(context, r) else scheduleReminder(context, r)
-                Status.NOTIFIED -> {
-                    sendNotification(context, r, silent = true, displayOriginalDueTime = Prefs.isDisplayOriginalDueTimeRecreate(context))
-                    if (r.isNagging) scheduleNextNag(context, r)
+        AlarmRegistry.batch(context) {
+            AlarmRegistry.clear(context)
+            scheduler(context).scheduleAndReshowAll(ReminderStorage.getReminders(context))
+        }
+    }
+
+    /**
+     * Complete the [AlarmRegistry] (see [AlarmRegistry.isComplete]) after an update from a version which did not keep
+     * it: cancel the alarms which are not registered, as one may still be set for any reminder (e.g., for the far
+     * future, which is now left to the alarm maintenance), set those again which should be set, and register the
+     * notifications of notified reminders. Due scheduled reminders without a registered alarm are shown.
+     */
+    fun completeAlarmRegistry(context: Context) {
+        val alarmManager = context.getSystemService(Context.ALARM_SERVICE) as AlarmManager
+        val scheduler = scheduler(context)
+        val now = clock.now()
+        AlarmRegistry.batch(context) {
+            for (r in ReminderStorage.getReminders(context)) {
+                if (r.status == Status.NOTIFIED) {
+                    AlarmRegistry.putNotification(context, r.id)
+                }
+                if (AlarmRegistry.getAlarm(context, r.id) != null) {
+                    continue
+                }
+                alarmManager.cancel(ReminderAction.Notify(r.id).getCancelPendingIntent(context))
+                when (r.status) {
+                    Status.SCHEDULED -> if (r.time <= now) scheduler.show(r) else scheduler.schedule(r)
+                    Status.NOTIFIED -> if (r.isNagging) scheduler.scheduleNextNag(r)
+                    Status.DONE -> {}
+                }
+            }
+            AlarmRegistry.markComplete(context)
+        }
+    }
+
+    /**
+     * Add the given reminders with their IDs, replacing existing reminders with the same IDs (see
+     * [ReminderStorage.mergeReminders]). Schedules the added reminders which are scheduled for the future and shows
+     * those which are due (scheduled reminders which are due are stored as notified and shown as usual, notified
+     * reminders are shown again silently), including their next nags. The scheduling and notifications of replaced
+     * reminders which are done are cancelled.
+     *
+     * @param context
+     * @param reminders
+     */
+    fun importReminders(context: Context, reminders: List<Reminder>) {
+        val now = clock.now()
+        // Stored as notified right away, so that showing them does not store each of them again
+        val imported = reminders.map {
+            if (it.status == Status.SCHEDULED && it.time <= now) it.withStatus(Status.NOTIFIED) else it
+        }
+        val replaced = ReminderStorage.mergeReminders(context, imported)
+        // Of several reminders with the same ID, the last one was kept
+        val importedById = LinkedHashMap<Int, Int>()
+        imported.forEachIndexed { i, reminder -> importedById[reminder.id] = i }
+        val scheduler = scheduler(context)
+        AlarmRegistry.batch(context) {
+            for (i in importedById.values) {
+                val reminder = imported[i]
+                if (reminder.status == Status.NOTIFIED) {
+                    scheduler.showNotified(reminder, due = reminders[i].status == Status.SCHEDULED)
+                } else if (replaced.contains(reminder.id)) {
+                    scheduler.reschedule(reminder)
+                } else if (reminder.status == Status.SCHEDULED) {
+                    scheduler.schedule(reminder)
                 }
-                Status.DONE -> {}
             }
         }
     }
@@ -455,8 +796,10 @@ object ReminderManager {
      */
     fun removeReminders(context: Context, ids: Set<Int>) {
         ReminderStorage.removeReminders(context, ids)
-        for (id in ids) {
-            cancelReminder(context, id)
+        AlarmRegistry.batch(context) {
+            for (id in ids) {
+                cancelReminder(context, id)
+            }
         }
     }
 
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder
+
+import felixwiemuth.simplereminder.data.Reminder
+import felixwiemuth.simplereminder.data.Reminder.Status
+import felixwiemuth.simplereminder.util.Clock
+
+/**
+ * Decides when reminders are notified: which alarms are set when reminders are scheduled, shown, nagged and
+ * rescheduled, and which reminders the alarm maintenance takes care of. It does not depend on Android: the time is
+ * taken from a [Clock] and all effects are performed by a [Platform]. [ReminderManager] runs it on the system; tests
+ * can run it against a virtual clock.
+ *
+ * Reminders are passed in by the caller, who is responsible for loading them and for batching the effects.
+ */
+class ReminderScheduler(private val clock: Clock, private val platform: Platform) {
+
+    enum class AlarmKind {
+        /**
+         * The reminder becomes due (see [show]).
+         */
+        NOTIFY,
+
+        /**
+         * The next repetition of a nagging reminder (see [nag]).
+         */
+        NAG
+    }
+
+    enum class NotificationKind {
+        /**
+         * The reminder has become due.
+         */
+        DUE,
+
+        /**
+         * A repetition of a nagging reminder.
+         */
+        NAG,
+
+        /**
+         * A notification removed by the system (e.g., at reboot) is shown again, silently.
+         */
+        RESHOWN
+    }
+
+    /**
+     * Performs the effects of scheduling.
+     */
+    interface Platform {
+        /**
+         * Set an alarm for the given reminder at the given time, replacing a previous alarm of the reminder.
+         */
+        fun setAlarm(reminderId: Int, kind: AlarmKind, time: Long)
+
+        /**
+         * Cancel the alarm of the given reminder, if one is set.
+         */
+        fun cancelAlarm(reminderId: Int)
+
+        /**
+         * Post the notification of the given reminder, replacing a previous one.
+         */
+        fun postNotification(reminder: Reminder, kind: NotificationKind)
+
+        /**
+         * Remove the notification of the given reminder, if one is posted.
+         */
+        fun cancelNotification(reminderId: Int)
+
+        /**
+         * Store the given reminder, replacing the stored reminder with the same ID.
+         */
+        fun storeReminder(reminder: Reminder)
+
+        /**
+         * The end of the alarm horizon at the last alarm maintenance (see [performAlarmMaintenance]).
+         */
+        var alarmHorizonEnd: Long
+
+        /**
+         * Set the (inexact) alarm of the next alarm maintenance for the given time, replacing a previous one.
+         */
+        fun setAlarmMaintenance(time: Long)
+    }
+
+    /**
+     * Set the alarm of a scheduled reminder, if it is due within [ALARM_HORIZON]. Otherwise, it is scheduled by
+     * [performAlarmMaintenance] later.
+     *
+     * @return whether an alarm was set
+     */
+    fun schedule(reminder: Reminder): Boolean {
+        if (reminder.time >= clock.now() + ALARM_HORIZON) {
+            return false
+        }
+        platform.setAlarm(reminder.id, AlarmKind.NOTIFY, reminder.time)
+        return true
+    }
+
+    /**
+     * Remove the notification of the reminder and set its alarm if its status is [Status.SCHEDULED] and its time is in
+     * the future; otherwise cancel its alarm.
+     */
+    fun reschedule(reminder: Reminder) {
+        platform.cancelNotification(reminder.id)
+        val isFuture = reminder.time > clock.now()
+        // Setting the alarm replaces a previous one
+        if (!(reminder.status === Status.SCHEDULED && isFuture && schedule(reminder))) {
+            platform.cancelAlarm(reminder.id)
+        }
+    }
+
+    /**
+     * Show a due reminder and store it with status [Status.NOTIFIED]. Schedules the next nag if the reminder is
+     * nagging.
+     */
+    fun show(reminder: Reminder) {
+        platform.postNotification(reminder, NotificationKind.DUE)
+        val notified = reminder.withStatus(Status.NOTIFIED)
+        platform.storeReminder(notified)
+        if (notified.isNagging) {
+            scheduleNextNag(notified)
+        }
+    }
+
+    /**
+     * Show the notification of a nagging reminder again and schedule the next repetition. The next repetition follows
+     * the original due time, so that a delayed nag does not cause all missed repetitions to be shown in a row.
+     */
+    fun nag(reminder: Reminder) {
+        platform.postNotification(reminder, NotificationKind.NAG)
+        scheduleNextNag(reminder)
+    }
+
+    /**
+     * Show the notification of a notified reminder which was stored from elsewhere (e.g., imported), replacing that of
+     * a previous reminder with its ID, and schedule its next nag or cancel the alarm of the previous reminder.
+     *
+     * @param due whether the reminder has just become due, so that it is shown as usual; otherwise it is shown again
+     * silently
+     */
+    fun showNotified(reminder: Reminder, due: Boolean) {
+        platform.postNotification(reminder, if (due) NotificationKind.DUE else NotificationKind.RESHOWN)
+        if (reminder.isNagging) {
+            scheduleNextNag(reminder)
+        } else {
+            platform.cancelAlarm(reminder.id)
+        }
+    }
+
+    /**
+     * Schedule the next nag of a nagging reminder at the next occurrence in the future according to its original
+     * schedule.
+     */
+    fun scheduleNextNag(reminder: Reminder) {
+        platform.setAlarm(reminder.id, AlarmKind.NAG, nextNagTime(reminder))
+    }
+
+    /**
+     * Calculate the next occurrence of a nagging reminder in the future based on its original due date.
+     */
+    fun nextNagTime(reminder: Reminder): Long {
+        assert(reminder.isNagging)
+        val d = reminder.naggingRepeatIntervalInMillis
+        val now = clock.now()
+        val sinceDue = now - reminder.time
+        val sinceLastNag = sinceDue % d
+        val untilNextNag = d - sinceLastNag
+        return now + untilNextNag
+    }
+
+    /**
+     * Set alarms for the scheduled reminders which have come within [ALARM_HORIZON] since the last maintenance (and
+     * show those which are already due, if the maintenance was delayed a lot), then set the next maintenance.
+     * This way, the number of alarms and the work when rescheduling do not depend on how many reminders are scheduled
+     * for the more distant future.
+     */
+    fun performAlarmMaintenance(reminders: Iterable<Reminder>) {
+        val now = clock.now()
+        val horizonEnd = now + ALARM_HORIZON
+        // Reminders before the previous horizon have been scheduled when added or by a previous maintenance, unless the
+        // clock was set back since then (see onWallClockChanged)
+        val previousHorizonEnd = platform.alarmHorizonEnd.let { if (it > horizonEnd) now else it }
+        for (r in reminders) {
+            if (r.status == Status.SCHEDULED && r.time >= previousHorizonEnd && r.time < horizonEnd) {
+                if (r.time <= now) show(r) else schedule(r)
+            }
+        }
+        platform.alarmHorizonEnd = horizonEnd
+        platform.setAlarmMaintenance(now + ALARM_MAINTENANCE_INTERVAL)
+    }
+
+    /**
+     * Whether the alarm maintenance has to be performed now, as the alarm horizon would end before the next regular
+     * maintenance (e.g., because the wall-clock time was set forward).
+     */
+    fun isAlarmMaintenanceDue(): Boolean = platform.alarmHorizonEnd < clock.now() + ALARM_MAINTENANCE_INTERVAL
+
+    /**
+     * Adjust the alarm horizon after the wall-clock time was changed. If it was set back, the horizon of the last
+     * maintenance extends beyond [ALARM_HORIZON] from now, so reminders added now for the time in between would
+     * neither get an alarm nor be considered by the maintenance. The horizon is then reset to now.
+     *
+     * @return whether the alarm maintenance has to be performed now
+     */
+    fun onWallClockChanged(): Boolean {
+        val now = clock.now()
+        if (platform.alarmHorizonEnd > now + ALARM_HORIZON) {
+            platform.alarmHorizonEnd = now
+            return true
+        }
+        return isAlarmMaintenanceDue()
+    }
+
+    /**
+     * Set all alarms and show all notifications of the given reminders again, after they have been removed by the
+     * system: schedule future reminders within [ALARM_HORIZON] and the next alarm maintenance, show due, but not yet
+     * notified, reminders, re-show notified reminders silently and schedule the next nags of nagging reminders.
+     */
+    fun scheduleAndReshowAll(reminders: Iterable<Reminder>) {
+        val now = clock.now()
+        platform.alarmHorizonEnd = now + ALARM_HORIZON
+        platform.setAlarmMaintenance(now + ALARM_MAINTENANCE_INTERVAL)
+        for (r in reminders) {
+            when (r.status) {
+                Status.SCHEDULED -> if (r.time <= now) show(r) else schedule(r)
+                Status.NOTIFIED -> {
+                    platform.postNotification(r, NotificationKind.RESHOWN)
+                    if (r.isNagging) scheduleNextNag(r)
+                }
+                Status.DONE -> {}
+            }
+        }
+    }
+
+    companion object {
+        private const val DAY = 24 * 60 * 60 * 1000L
+
+        /**
+         * Only scheduled reminders due within this time from now hold an exact alarm. The others are registered by the
+         * alarm maintenance when they come within this horizon.
+         */
+        const val ALARM_HORIZON = 2 * DAY
+
+        /**
+         * Interval of the (inexact) alarm maintenance. Being shorter than [ALARM_HORIZON], the maintenance can be
+         * delayed by the difference without any reminder being missed.
+         */
+        const val ALARM_MAINTENANCE_INTERVAL = DAY
+    }
+}
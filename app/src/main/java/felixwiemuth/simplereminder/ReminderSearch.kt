@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder
+
+import android.content.Context
+import felixwiemuth.simplereminder.data.Reminder
+import felixwiemuth.simplereminder.data.ReminderSearchIndex
+
+/**
+ * Searches the texts of all stored reminders. The [ReminderSearchIndex] is built from storage on first use in a process
+ * and then kept up to date by listening to [ReminderStorage] changes, so that searching does not load reminders.
+ */
+object ReminderSearch {
+    const val MAX_RESULTS = 200
+
+    private val lock = Any()
+
+    /**
+     * The index, or null if not built yet.
+     */
+    private var index: ReminderSearchIndex? = null
+
+    private val changeListener = ReminderStorage.ChangeListener { _, changed, removed ->
+        synchronized(lock) {
+            index?.let { index ->
+                removed.forEach { index.remove(it) }
+                changed.forEach { index.put(it) }
+            }
+        }
+    }
+
+    /**
+     * Build the index if this has not been done yet. Should not be called on the main thread.
+     */
+    fun prepare(context: Context) {
+        synchronized(lock) { getIndex(context) }
+    }
+
+    /**
+     * Get the up to [MAX_RESULTS] reminders best matching the given query, best first (see [ReminderSearchIndex]).
+     * Should not be called on the main thread, as the index may have to be built first.
+     */
+    fun search(context: Context, query: String): List<Reminder> =
+        synchronized(lock) { getIndex(context).search(query, MAX_RESULTS) }
+
+    private fun getIndex(context: Context): ReminderSearchIndex =
+        index ?: ReminderSearchIndex().also { newIndex ->
+            // Changes committed after reading are applied when the lock is released (adding a reminder again replaces it)
+            ReminderStorage.addChangeListener(changeListener)
+            ReminderStorage.getReminders(context).forEach { newIndex.put(it) }
+            index = newIndex
+        }
+}
@@ -20,19 +20,95 @@ package felixwiemuth.simplereminder
 import android.annotation.SuppressLint
 import android.content.Context
 import android.content.SharedPreferences
+import android.util.Base64
 import androidx.localbroadcastmanager.content.LocalBroadcastManager
+import felixwiemuth.simplereminder.data.NextReminders
 import felixwiemuth.simplereminder.data.Reminder
+import felixwiemuth.simplereminder.data.ReminderIdAllocator
+import felixwiemuth.simplereminder.data.ReminderSnapshot
+import felixwiemuth.simplereminder.data.ReminderVersions
+import felixwiemuth.simplereminder.ui.NextRemindersWidgetProvider
 import felixwiemuth.simplereminder.ui.reminderslist.RemindersListFragment
+import kotlinx.serialization.ExperimentalSerializationApi
+import kotlinx.serialization.decodeFromString
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.DecodeSequenceMode
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.decodeToSequence
+import java.util.PriorityQueue
+import java.util.concurrent.CopyOnWriteArrayList
 import java.util.concurrent.locks.ReentrantLock
 
 /**
  * Handles the persistent reminder storage.
  * The operations in this object are thread-safe, i.e., reminder updates can be attempted
  * from multiple threads in parallel where a consistent storage is guaranteed.
+ * Reads are served from an immutable [ReminderSnapshot] of the last committed state without locking (see
+ * [ReminderVersions]); the reminders are only decoded from the preferences once.
  */
 object ReminderStorage {
     class ReminderNotFoundException(message: String?) : RuntimeException(message)
 
+    /**
+     * Is informed about changes of the stored reminders after they have been committed, on the thread which performed
+     * the change.
+     */
+    fun interface ChangeListener {
+        /**
+         * @param changed the reminders which were added or updated, in their new state
+         * @param removed the IDs of the reminders which were removed (may contain IDs which did not exist)
+         */
+        fun onRemindersChanged(context: Context, changed: List<Reminder>, removed: Set<Int>)
+    }
+
+    private val changeListeners = CopyOnWriteArrayList<ChangeListener>()
+
+    /**
+     * Maximum number of upcoming reminders in the [NextReminders] snapshot.
+     */
+    const val NEXT_REMINDERS_LIMIT = 5
+
+    private const val PREF_NEXT_REMINDERS = "nextReminders"
+
+    /**
+     * The snapshot of the next reminders after the current operation, to be written after its commit. Guarded by the
+     * lock.
+     */
+    private var pendingNextReminders: NextReminders? = null
+
+    private const val PREF_SCHEDULE = "schedule"
+
+    /**
+     * The serialized schedule mirror (see [getScheduleMirror]) after the current operation, to be written after its
+     * commit. Guarded by the lock.
+     */
+    private var pendingSchedule: String? = null
+
+    /**
+     * The snapshots of the stored reminders. Written while holding the lock, read without it.
+     */
+    private val versions = ReminderVersions()
+
+    /**
+     * The ID allocator in the state of the current operation, loaded from the preferences when first needed. Guarded
+     * by the lock; dropped when an operation fails, as it may have been changed.
+     */
+    private var idAllocator: ReminderIdAllocator? = null
+
+    fun addChangeListener(listener: ChangeListener) {
+        changeListeners.add(listener)
+    }
+
+    fun removeChangeListener(listener: ChangeListener) {
+        changeListeners.remove(listener)
+    }
+
+    private fun notifyChangeListeners(context: Context, changed: List<Reminder>, removed: Set<Int> = emptySet()) {
+        for (listener in changeListeners) {
+            listener.onRemindersChanged(context, changed, removed)
+        }
+    }
+
     /**
      * Lock guarding the state preferences. This reference being null is equivalent to the lock not being acquired.
      * Note that this is necessary as Android can deinitialize static variables, though this should not happen
@@ -64,33 +140,154 @@ object ReminderStorage {
         context: Context,
         operation: (SharedPreferences, SharedPreferences.Editor) -> T
     ): T {
+        val lockRequested = System.nanoTime()
         lock()
-        return try {
+        val lockAcquired = System.nanoTime()
+        StorageStats.recordLockWait(lockAcquired - lockRequested)
+        var changedNextReminders: NextReminders? = null
+        val result = try {
             val prefs = Prefs.getStatePrefs(context)
             val editor = prefs.edit()
             val result = operation(prefs, editor)
+            val commitStart = System.nanoTime()
             editor.commit()
+            StorageStats.recordCommit(System.nanoTime() - commitStart)
+            versions.publish()
+            changedNextReminders = pendingNextReminders?.takeIf { writeNextReminders(context, it) }
+            pendingSchedule?.let { writeScheduleMirror(context, it) }
             notifyRemindersChangedBroadcast(context)
             result
+        } catch (e: Throwable) {
+            idAllocator = null
+            throw e
         } finally {
+            pendingNextReminders = null
+            pendingSchedule = null
+            versions.discard()
+            StorageStats.recordWrite(System.nanoTime() - lockAcquired)
             unlock()
+            StorageStats.persistIfDue(context)
         }
+        changedNextReminders?.let { NextRemindersWidgetProvider.updateWidgets(context, it) }
+        return result
     }
 
     /**
-     * Returns an immutable list of the saved reminders.
-     *
-     * @param prefs
-     * @return
+     * Decode the saved reminders from the given state preferences.
      */
     private fun getRemindersFromPrefs(prefs: SharedPreferences): List<Reminder> {
-        return Reminder.fromJson(prefs.getString(Prefs.PREF_STATE_CURRENT_REMINDERS, "[]")!!)
+        val json = prefs.getString(Prefs.PREF_STATE_CURRENT_REMINDERS, "[]")!!
+        val decodeStart = System.nanoTime()
+        val reminders = Reminder.fromJson(json)
+        StorageStats.recordDecode(System.nanoTime() - decodeStart, json, reminders.size)
+        return reminders
+    }
+
+    /**
+     * Get the latest snapshot of the saved reminders, decoding them if not loaded yet. Several reads from the same
+     * snapshot are consistent with each other.
+     */
+    fun getSnapshot(context: Context): ReminderSnapshot {
+        versions.latest?.let { return it }
+        lock()
+        try {
+            return versions.latest ?: versions.load(getRemindersFromPrefs(Prefs.getStatePrefs(context)))
+        } finally {
+            unlock()
+        }
     }
 
+    /**
+     * Returns an immutable list of the saved reminders, which is not changed by later updates.
+     */
     fun getReminders(context: Context): List<Reminder> {
-        return getRemindersFromPrefs(Prefs.getStatePrefs(context))
+        return getSnapshot(context).reminders
+    }
+
+    /**
+     * Get the saved reminders as a sequence. If they are not loaded yet, it decodes one reminder at a time, so that no
+     * list of all reminders has to be built. The sequence can be iterated only once.
+     */
+    @OptIn(ExperimentalSerializationApi::class)
+    fun getReminderSequence(context: Context): Sequence<Reminder> {
+        versions.latest?.let { return it.reminders.asSequence() }
+        val json = Prefs.getStatePrefs(context).getString(Prefs.PREF_STATE_CURRENT_REMINDERS, "[]")!!
+        return Json.decodeToSequence(json.byteInputStream(), Reminder.serializer(), DecodeSequenceMode.ARRAY_WRAPPED)
     }
 
+    /**
+     * Get the snapshot of the due and next scheduled reminders. This only reads the small stored snapshot, except
+     * if it does not exist yet (e.g., after an update of the app), in which case it is built from all reminders once.
+     */
+    fun getNextReminders(context: Context): NextReminders {
+        readNextReminders(context)?.let { return it }
+        lock()
+        try {
+            return readNextReminders(context)
+                ?: NextReminders.of(getReminders(context), NEXT_REMINDERS_LIMIT).also { writeNextReminders(context, it) }
+        } finally {
+            unlock()
+        }
+    }
+
+    private fun readNextReminders(context: Context): NextReminders? =
+        Prefs.getNextRemindersPrefs(context).getString(PREF_NEXT_REMINDERS, null)?.let { Json.decodeFromString(it) }
+
+    /**
+     * Store the given snapshot of the next reminders if it differs from the stored one. Must be called while holding
+     * the lock.
+     *
+     * @return whether the snapshot changed
+     */
+    private fun writeNextReminders(context: Context, nextReminders: NextReminders): Boolean {
+        if (readNextReminders(context) == nextReminders) {
+            return false
+        }
+        Prefs.getNextRemindersPrefs(context).edit()
+            .putString(PREF_NEXT_REMINDERS, Json.encodeToString(nextReminders))
+            .apply()
+        return true
+    }
+
+    /**
+     * Get the reminders which are not done, reduced to what is needed to schedule them (without texts, which are
+     * private). This copy is kept in device-protected storage, so that reminders can be scheduled and shown before the
+     * device is unlocked for the first time after boot, when the reminders themselves are not accessible yet.
+     */
+    fun getScheduleMirror(context: Context): List<Reminder> = readScheduleMirror(context) ?: emptyList()
+
+    /**
+     * Create the schedule mirror if it does not exist yet (e.g., after an update of the app).
+     */
+    fun ensureScheduleMirror(context: Context) {
+        if (readSerializedScheduleMirror(context) != null) {
+            return
+        }
+        lock()
+        try {
+            if (readSerializedScheduleMirror(context) == null) {
+                writeScheduleMirror(context, Reminder.toJson(toSchedule(getReminders(context))))
+            }
+        } finally {
+            unlock()
+        }
+    }
+
+    private fun readScheduleMirror(context: Context): List<Reminder>? =
+        readSerializedScheduleMirror(context)?.let { Reminder.fromJson(it) }
+
+    private fun readSerializedScheduleMirror(context: Context): String? =
+        Prefs.getSchedulePrefs(context).getString(PREF_SCHEDULE, null)
+
+    private fun writeScheduleMirror(context: Context, serializedSchedule: String) {
+        Prefs.getSchedulePrefs(context).edit().putString(PREF_SCHEDULE, serializedSchedule).apply()
+    }
+
+    private fun toSchedule(reminders: Iterable<Reminder>): List<Reminder> =
+        reminders.filter { it.status != Reminder.Status.DONE }.map { toScheduleEntry(it) }
+
+    private fun toScheduleEntry(reminder: Reminder): Reminder = reminder.copy(text = "", recurrence = null, occurrence = null)
+
     /**
      * Get the reminder with the specified ID.
      *
@@ -102,9 +299,64 @@ object ReminderStorage {
     @JvmStatic
     @Throws(ReminderNotFoundException::class)
     fun getReminder(context: Context, id: Int): Reminder =
-        getReminders(context).find { r -> r.id == id }
+        getSnapshot(context)[id]
             ?: throw ReminderNotFoundException("Reminder with id $id does not exist.")
 
+    /**
+     * Order in which DONE reminders are paged: descending by date, then descending by ID (to have a total order).
+     */
+    @JvmField
+    val DONE_ORDER: Comparator<Reminder> = Comparator { a, b -> if (a.time != b.time) b.time.compareTo(a.time) else b.id.compareTo(a.id) }
+
+    /**
+     * Get a page of DONE reminders: the up to [limit] reminders directly following [anchor] in [DONE_ORDER]
+     * (from the beginning if [anchor] is null), sorted by [DONE_ORDER].
+     */
+    fun getDoneRemindersAfter(context: Context, anchor: Reminder?, limit: Int): List<Reminder> =
+        selectDoneRemindersAfter(getReminders(context), anchor, limit)
+
+    /**
+     * Get a page of DONE reminders: the up to [limit] reminders directly preceding [anchor] in [DONE_ORDER],
+     * sorted by [DONE_ORDER].
+     */
+    fun getDoneRemindersBefore(context: Context, anchor: Reminder, limit: Int): List<Reminder> {
+        val reverseOrder = Comparator<Reminder> { o1, o2 -> DONE_ORDER.compare(o2, o1) }
+        return selectFirst(getReminders(context), reverseOrder, limit) {
+            it.status == Reminder.Status.DONE && DONE_ORDER.compare(it, anchor) < 0
+        }.asReversed()
+    }
+
+    /**
+     * Like [getDoneRemindersAfter] but on an already loaded list of reminders.
+     */
+    fun selectDoneRemindersAfter(reminders: Iterable<Reminder>, anchor: Reminder?, limit: Int): List<Reminder> =
+        selectFirst(reminders, DONE_ORDER, limit) {
+            it.status == Reminder.Status.DONE && (anchor == null || DONE_ORDER.compare(it, anchor) > 0)
+        }
+
+    /**
+     * Get the first [limit] reminders according to [order] which satisfy [filter], sorted by [order].
+     * Only keeps [limit] reminders in a heap instead of sorting all of them.
+     */
+    private fun selectFirst(
+        reminders: Iterable<Reminder>,
+        order: Comparator<Reminder>,
+        limit: Int,
+        filter: (Reminder) -> Boolean
+    ): List<Reminder> {
+        // The head of the heap is the last of the first reminders found so far
+        val heap = PriorityQueue(limit + 1, Comparator<Reminder> { o1, o2 -> order.compare(o2, o1) })
+        for (reminder in reminders) {
+            if (filter(reminder)) {
+                heap.add(reminder)
+                if (heap.size > limit) {
+                    heap.poll()
+                }
+            }
+        }
+        return heap.sortedWith(order)
+    }
+
     private fun updateRemindersList(context: Context, operation: (MutableList<Reminder>) -> Unit) {
         performExclusivelyOnStatePrefsAndCommit(
             context
@@ -119,15 +371,48 @@ object ReminderStorage {
         editor: SharedPreferences.Editor,
         reminders: List<Reminder>
     ) {
-        editor.putString(Prefs.PREF_STATE_CURRENT_REMINDERS, Reminder.toJson(reminders))
+        val encodeStart = System.nanoTime()
+        val json = Reminder.toJson(reminders)
+        StorageStats.recordEncode(System.nanoTime() - encodeStart, json, reminders.size)
+        editor.putString(Prefs.PREF_STATE_CURRENT_REMINDERS, json)
+        versions.prepare(reminders)
+        pendingNextReminders = NextReminders.of(reminders, NEXT_REMINDERS_LIMIT)
+        pendingSchedule = Reminder.toJson(toSchedule(reminders))
     }
 
-    private fun updateRemindersListInEditor(
+    /**
+     * Add the given reminder to the serialized list of reminders without decoding the list.
+     * The caller has to ensure that no reminder with the same ID exists.
+     */
+    private fun appendReminderInEditor(
         prefs: SharedPreferences,
         editor: SharedPreferences.Editor,
+        reminder: Reminder
+    ) {
+        val json = prefs.getString(Prefs.PREF_STATE_CURRENT_REMINDERS, "[]")!!
+        val encodeStart = System.nanoTime()
+        val element = Json.encodeToString(reminder)
+        val appended = appendToSerializedList(json, element)
+        StorageStats.recordAppend(System.nanoTime() - encodeStart, element, appended)
+        editor.putString(Prefs.PREF_STATE_CURRENT_REMINDERS, appended)
+    }
+
+    /**
+     * Append the given serialized element to the given serialized list without decoding the list.
+     */
+    private fun appendToSerializedList(json: String, element: String): String =
+        if (json.indexOf('{') < 0) { // The list is empty
+            "[$element]"
+        } else {
+            json.substring(0, json.lastIndexOf(']')) + "," + element + "]"
+        }
+
+    private fun updateRemindersListInEditor(
+        context: Context,
+        editor: SharedPreferences.Editor,
         operation: (MutableList<Reminder>) -> Unit
     ) {
-        val reminders = getRemindersFromPrefs(prefs).toMutableList()
+        val reminders = getReminders(context).toMutableList()
         operation(reminders)
         writeRemindersListInEditor(editor, reminders)
     }
@@ -135,17 +420,6 @@ object ReminderStorage {
     private fun requireReminderIDNotExists(reminders: Iterable<Reminder>, id: Int) =
         require(reminders.find { it.id == id } == null) { "Reminder with id $id already exists." }
 
-    private fun addReminderInEditor(
-        prefs: SharedPreferences,
-        editor: SharedPreferences.Editor,
-        reminder: Reminder
-    ) {
-        updateRemindersListInEditor(prefs, editor) {
-            requireReminderIDNotExists(it, reminder.id)
-            it.add(reminder)
-        }
-    }
-
     /**
      * Add the given reminder (with the given ID).
      *
@@ -159,6 +433,7 @@ object ReminderStorage {
             requireReminderIDNotExists(it, reminder.id)
             it.add(reminder)
         }
+        notifyChangeListeners(context, listOf(reminder))
         return reminder
     }
 
@@ -173,14 +448,58 @@ object ReminderStorage {
         return performExclusivelyOnStatePrefsAndCommit(
             context
         ) { prefs, editor ->
-            // Get next reminder ID
-            val nextId = prefs.getInt(Prefs.PREF_STATE_NEXTID, 0)
-            reminderBuilder.id = nextId
-            val reminder = reminderBuilder.build()
-            editor.putInt(Prefs.PREF_STATE_NEXTID, nextId + 2) // Reminder IDs may only be even
-            addReminderInEditor(prefs, editor, reminder)
+            val idAllocator = getIdAllocator(prefs)
+            lateinit var reminder: Reminder
+            if (idAllocator.hasFreshIds) {
+                // No reminder can have a fresh ID, so the list does not have to be decoded to add the reminder
+                reminderBuilder.id = idAllocator.allocate(System.currentTimeMillis()) { emptyList() }
+                reminder = reminderBuilder.build()
+                appendReminderInEditor(prefs, editor, reminder)
+                versions.prepareAdded(reminder)
+                // Adding a reminder cannot move another one into the snapshot, so it can be updated without the list
+                pendingNextReminders = readNextReminders(context)?.withAdded(reminder, NEXT_REMINDERS_LIMIT)
+                if (reminder.status != Reminder.Status.DONE) {
+                    pendingSchedule = readSerializedScheduleMirror(context)
+                        ?.let { appendToSerializedList(it, Json.encodeToString(toScheduleEntry(reminder))) }
+                }
+            } else {
+                updateRemindersListInEditor(context, editor) { reminders ->
+                    reminderBuilder.id = idAllocator.allocate(System.currentTimeMillis()) { reminders.map { it.id } }
+                    reminder = reminderBuilder.build()
+                    requireReminderIDNotExists(reminders, reminder.id)
+                    reminders.add(reminder)
+                }
+            }
+            writeIdAllocatorInEditor(editor, idAllocator)
             reminder
+        }.also { notifyChangeListeners(context, listOf(it)) }
+    }
+
+    private fun getIdAllocator(prefs: SharedPreferences): ReminderIdAllocator =
+        idAllocator ?: ReminderIdAllocator(
+            prefs.getInt(Prefs.PREF_STATE_NEXTID, 0),
+            prefs.getInt(Prefs.PREF_STATE_ID_CURSOR, 0),
+            prefs.getString(Prefs.PREF_STATE_RECYCLABLE_IDS, null)
+                ?.let { ReminderIdAllocator.fromBytes(Base64.decode(it, Base64.NO_WRAP)) },
+            prefs.getString(Prefs.PREF_STATE_FREED_IDS, null)?.let { Json.decodeFromString(it) } ?: emptyList()
+        ).also { idAllocator = it }
+
+    /**
+     * Write the parts of the ID allocator which changed since it was last written.
+     */
+    private fun writeIdAllocatorInEditor(editor: SharedPreferences.Editor, idAllocator: ReminderIdAllocator) {
+        editor.putInt(Prefs.PREF_STATE_NEXTID, idAllocator.nextFreshId)
+            .putInt(Prefs.PREF_STATE_ID_CURSOR, idAllocator.cursor)
+        if (idAllocator.freedIdsChanged) {
+            editor.putString(Prefs.PREF_STATE_FREED_IDS, Json.encodeToString(idAllocator.freedIds.toList()))
         }
+        idAllocator.recyclable?.takeIf { idAllocator.recyclableChanged }?.let {
+            editor.putString(
+                Prefs.PREF_STATE_RECYCLABLE_IDS,
+                Base64.encodeToString(ReminderIdAllocator.toBytes(it), Base64.NO_WRAP)
+            )
+        }
+        idAllocator.markPersisted()
     }
 
     /**
@@ -197,6 +516,7 @@ object ReminderStorage {
             removeReminderWithSameId(it.iterator(), reminder)
             it.add(reminder)
         }
+        notifyChangeListeners(context, listOf(reminder))
     }
 
     /**
@@ -212,31 +532,62 @@ object ReminderStorage {
             removeRemindersWithSameId(currentReminders.iterator(), reminders)
             currentReminders.addAll(reminders)
         }
+        notifyChangeListeners(context, reminders.toList())
     }
 
     /**
-     * Update the reminders with the given IDs with the given transformation.
+     * Replace the reminders with the given IDs by the result of the given transformation, in one transaction.
+     * IDs of reminders which do not exist are ignored.
      *
      * @param context
-     * @param transformation
      * @param ids
+     * @param transformation must not change the ID
      * @return the transformed reminders
      */
-    fun updateReminders(
-        context: Context,
-        transformation: (Reminder) -> Unit,
-        ids: Set<Int>
-    ): List<Reminder> {
-        val updated = mutableListOf<Reminder>()
-        updateRemindersList(context) { currentReminders: List<Reminder> ->
-            for (reminder in currentReminders) {
+    fun replaceReminders(context: Context, ids: Set<Int>, transformation: (Reminder) -> Reminder): List<Reminder> {
+        val replaced = mutableListOf<Reminder>()
+        updateRemindersList(context) { currentReminders ->
+            val it = currentReminders.listIterator()
+            for (reminder in it) {
                 if (ids.contains(reminder.id)) {
-                    transformation(reminder)
-                    updated.add(reminder)
+                    val transformed = transformation(reminder)
+                    it.set(transformed)
+                    replaced.add(transformed)
+                }
+            }
+        }
+        notifyChangeListeners(context, replaced)
+        return replaced
+    }
+
+    /**
+     * Add the given reminders with their IDs, replacing existing reminders with the same IDs, in one transaction.
+     * Of several given reminders with the same ID, the last one is kept. The IDs are not allocated for new reminders.
+     *
+     * @param context
+     * @param reminders
+     * @return the IDs of the reminders which were replaced
+     */
+    fun mergeReminders(context: Context, reminders: List<Reminder>): Set<Int> {
+        val merged = reminders.associateBy { it.id }
+        val replaced = HashSet<Int>()
+        performExclusivelyOnStatePrefsAndCommit(context) { prefs, editor ->
+            updateRemindersListInEditor(context, editor) { currentReminders ->
+                val it = currentReminders.iterator()
+                for ((id) in it) {
+                    if (merged.containsKey(id)) {
+                        replaced.add(id)
+                        it.remove()
+                    }
                 }
+                currentReminders.addAll(merged.values)
             }
+            val idAllocator = getIdAllocator(prefs)
+            idAllocator.reserve(merged.keys)
+            writeIdAllocatorInEditor(editor, idAllocator)
         }
-        return updated
+        notifyChangeListeners(context, merged.values.toList())
+        return replaced
     }
 
     /**
@@ -246,7 +597,17 @@ object ReminderStorage {
      * @param ids
      */
     fun removeReminders(context: Context, ids: Set<Int>) {
-        updateRemindersList(context) { removeRemindersById(it.iterator(), ids) }
+        performExclusivelyOnStatePrefsAndCommit(context) { prefs, editor ->
+            updateRemindersListInEditor(context, editor) { removeRemindersById(it.iterator(), ids) }
+            // Keep the IDs from being recycled while pending intents or notifications might still refer to them (only
+            // relevant shortly before and once IDs are recycled)
+            val idAllocator = getIdAllocator(prefs)
+            if (idAllocator.recordsFreedIds) {
+                idAllocator.free(ids, System.currentTimeMillis())
+                writeIdAllocatorInEditor(editor, idAllocator)
+            }
+        }
+        notifyChangeListeners(context, emptyList(), ids)
     }
 
     /**
@@ -296,7 +657,7 @@ object ReminderStorage {
      *
      * @param context
      */
-    private fun notifyRemindersChangedBroadcast(context: Context) {
+    fun notifyRemindersChangedBroadcast(context: Context) {
         Prefs.setRemindersUpdated(true, context)
         LocalBroadcastManager.getInstance(context)
             .sendBroadcast(RemindersListFragment.getRemindersUpdatedBroadcastIntent())
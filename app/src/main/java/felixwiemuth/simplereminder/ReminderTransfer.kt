@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder
+
+import android.content.Context
+import android.net.Uri
+import felixwiemuth.simplereminder.data.ReminderNdjson
+import java.io.FileNotFoundException
+import java.io.FilterInputStream
+import java.io.IOException
+import java.io.InputStream
+
+/**
+ * Exports reminders to and imports reminders from documents (e.g., chosen via the Storage Access Framework) in the
+ * format of [ReminderNdjson]. Reminders are streamed one at a time; imported reminders are merged into the stored
+ * reminders by ID in batches of [IMPORT_BATCH_SIZE], each in one transaction.
+ *
+ * The operations block and should not be called on the main thread.
+ */
+object ReminderTransfer {
+    /**
+     * Number of reminders merged into the stored reminders at once. Larger batches mean less transactions (each
+     * rewriting all stored reminders), but more reminders held in memory.
+     */
+    private const val IMPORT_BATCH_SIZE = 2000
+
+    fun interface ProgressListener {
+        /**
+         * @param reminders the number of reminders processed so far
+         * @param fraction the fraction of the work done, or a negative value if unknown
+         */
+        fun onProgress(reminders: Int, fraction: Float)
+    }
+
+    /**
+     * Write all stored reminders to the (new) document with the given URI.
+     *
+     * @return the number of exported reminders
+     * @throws IOException if the document cannot be written
+     */
+    fun export(context: Context, uri: Uri, listener: ProgressListener): Int =
+        (context.contentResolver.openOutputStream(uri) ?: throw FileNotFoundException("Cannot open $uri")).use { out ->
+            ReminderNdjson.write(ReminderStorage.getReminderSequence(context), out) { listener.onProgress(it, -1f) }
+        }
+
+    /**
+     * Add the reminders from the document with the given URI, replacing stored reminders with the same IDs.
+     *
+     * @return the number of imported reminders
+     * @throws ReminderNdjson.FormatException if the document contains an invalid reminder; the reminders before it
+     * have been imported
+     * @throws IOException if the document cannot be read
+     */
+    fun import(context: Context, uri: Uri, listener: ProgressListener): Int {
+        val size = context.contentResolver.openFileDescriptor(uri, "r")?.use { it.statSize } ?: -1L
+        val input = CountingInputStream(
+            context.contentResolver.openInputStream(uri) ?: throw FileNotFoundException("Cannot open $uri")
+        )
+        var imported = 0
+        return input.use {
+            ReminderNdjson.read(input, IMPORT_BATCH_SIZE) { batch ->
+                ReminderManager.importReminders(context, batch)
+                imported += batch.size
+                listener.onProgress(imported, if (size > 0) input.count.toFloat() / size else -1f)
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes read from the underlying stream.
+     */
+    private class CountingInputStream(input: InputStream) : FilterInputStream(input) {
+        var count = 0L
+            private set
+
+        override fun read(): Int = super.read().also { if (it >= 0) count++ }
+
+        override fun read(b: ByteArray, off: Int, len: Int): Int =
+            super.read(b, off, len).also { if (it > 0) count += it }
+
+        override fun skip(n: Long): Long = super.skip(n).also { count += it }
+    }
+}
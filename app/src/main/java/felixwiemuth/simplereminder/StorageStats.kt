@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder
+
+import android.content.BroadcastReceiver
+import android.content.Context
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.decodeFromString
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.JsonElement
+import kotlinx.serialization.json.encodeToJsonElement
+
+/**
+ * Performance counters of [ReminderStorage]: number of reads and writes, the amount of serialized data and latency
+ * histograms for waiting for and holding the storage lock, committing, decoding and encoding.
+ *
+ * Counters of the current process are kept in memory and added to the persisted counters when [persist] is called,
+ * which happens on a write at least [PERSIST_INTERVAL_NANOS] after the last time (see [persistIfDue]), when a
+ * broadcast receiver has finished its work (see [persistAndFinish]) and when the app's UI is hidden (see [Main]).
+ * This way the counters cover all processes of the app since the last [reset], including short-lived ones started by
+ * alarms, boot or the widget, except for the last few writes of a process which ended in between.
+ */
+object StorageStats {
+    /**
+     * A histogram of durations with buckets growing exponentially: bucket 0 counts durations below 1 µs,
+     * bucket i > 0 durations in [2^(i-1), 2^i) µs. The last bucket also counts all longer durations.
+     */
+    @Serializable
+    class LatencyHistogram(
+        val buckets: LongArray = LongArray(BUCKETS),
+        var count: Long = 0,
+        var totalMicros: Long = 0,
+        var maxMicros: Long = 0
+    ) {
+        fun record(nanos: Long) {
+            val micros = nanos / 1000
+            val bucket = if (micros <= 0) 0 else minOf(64 - java.lang.Long.numberOfLeadingZeros(micros), BUCKETS - 1)
+            buckets[bucket]++
+            count++
+            totalMicros += micros
+            maxMicros = maxOf(maxMicros, micros)
+        }
+
+        fun add(other: LatencyHistogram) {
+            for (i in buckets.indices) {
+                buckets[i] += other.buckets.getOrElse(i) { 0 }
+            }
+            count += other.count
+            totalMicros += other.totalMicros
+            maxMicros = maxOf(maxMicros, other.maxMicros)
+        }
+
+        fun copy() = LatencyHistogram(buckets.copyOf(), count, totalMicros, maxMicros)
+
+        /**
+         * Get an upper bound for the given percentile (0 < p <= 100) in microseconds, based on the bucket boundaries
+         * (but at most [maxMicros]). Returns 0 if there are no samples.
+         */
+        fun percentileMicros(p: Double): Long {
+            if (count == 0L) {
+                return 0
+            }
+            val rank = Math.ceil(count * p / 100).toLong().coerceAtLeast(1)
+            var seen = 0L
+            for (i in buckets.indices) {
+                seen += buckets[i]
+                if (seen >= rank) {
+                    return minOf(1L shl i, maxMicros)
+                }
+            }
+            return maxMicros
+        }
+
+        companion object {
+            const val BUCKETS = 32
+        }
+    }
+
+    @Serializable
+    class Counters(
+        /**
+         * Time in milliseconds since which the counters have been collected.
+         */
+        var since: Long = System.currentTimeMillis(),
+        var reads: Long = 0,
+        var writes: Long = 0,
+        /**
+         * Total size of all encoded reminder lists.
+         */
+        var bytesSerialized: Long = 0,
+        /**
+         * Size of the stored reminders list when it was last read or written.
+         */
+        var storedBytes: Long = 0,
+        /**
+         * Number of stored reminders when they were last read or written.
+         */
+        var storedReminders: Int = 0,
+        val lockWait: LatencyHistogram = LatencyHistogram(),
+        val lockHold: LatencyHistogram = LatencyHistogram(),
+        val commit: LatencyHistogram = LatencyHistogram(),
+        val decode: LatencyHistogram = LatencyHistogram(),
+        val encode: LatencyHistogram = LatencyHistogram()
+    ) {
+        fun add(other: Counters) {
+            reads += other.reads
+            writes += other.writes
+            bytesSerialized += other.bytesSerialized
+            lockWait.add(other.lockWait)
+            lockHold.add(other.lockHold)
+            commit.add(other.commit)
+            decode.add(other.decode)
+            encode.add(other.encode)
+        }
+
+        fun copy() = Counters(
+            since, reads, writes, bytesSerialized, storedBytes, storedReminders,
+            lockWait.copy(), lockHold.copy(), commit.copy(), decode.copy(), encode.copy()
+        )
+    }
+
+    private const val PREF_DIAGNOSTICS_STORAGE_STATS = "storageStats"
+
+    /**
+     * Time after which the counters of this process are persisted again by [persistIfDue].
+     */
+    private const val PERSIST_INTERVAL_NANOS = 60_000_000_000L
+
+    private val json = Json { ignoreUnknownKeys = true }
+
+    /**
+     * Counters of this process which have not been persisted yet.
+     */
+    private var session = Counters()
+
+    /**
+     * The persisted counters, or null if not loaded yet.
+     */
+    private var stored: Counters? = null
+
+    /**
+     * Whether [Counters.storedBytes] and [Counters.storedReminders] of the session counters are valid.
+     */
+    private var sessionSizeKnown = false
+
+    /**
+     * Number of reminders appended (see [recordAppend]) while the session's number of stored reminders was not known.
+     */
+    private var sessionAppendedReminders = 0
+
+    /**
+     * When the counters of this process were last persisted (or the process started), as by [System.nanoTime].
+     */
+    private var lastPersisted = System.nanoTime()
+
+    private val lock = Any()
+
+    fun recordLockWait(nanos: Long) = synchronized(lock) { session.lockWait.record(nanos) }
+
+    fun recordCommit(nanos: Long) = synchronized(lock) { session.commit.record(nanos) }
+
+    /**
+     * Record a completed write operation which held the storage lock for the given time.
+     */
+    fun recordWrite(lockHoldNanos: Long) = synchronized(lock) {
+        session.writes++
+        session.lockHold.record(lockHoldNanos)
+    }
+
+    /**
+     * Record decoding the given serialized reminders list.
+     */
+    fun recordDecode(nanos: Long, serialized: String, reminders: Int) = synchronized(lock) {
+        session.reads++
+        session.decode.record(nanos)
+        setStoredSize(serialized, reminders)
+    }
+
+    /**
+     * Record encoding a reminders list with the given result.
+     */
+    fun recordEncode(nanos: Long, serialized: String, reminders: Int) = synchronized(lock) {
+        session.encode.record(nanos)
+        val bytes = setStoredSize(serialized, reminders)
+        session.bytesSerialized += bytes
+    }
+
+    /**
+     * Record appending one encoded reminder to the serialized reminders list, which results in the given list.
+     */
+    fun recordAppend(nanos: Long, element: String, serialized: String) = synchronized(lock) {
+        session.encode.record(nanos)
+        session.bytesSerialized += utf8Length(element)
+        session.storedBytes = utf8Length(serialized)
+        if (sessionSizeKnown) {
+            session.storedReminders++
+        } else {
+            sessionAppendedReminders++
+        }
+    }
+
+    private fun setStoredSize(serialized: String, reminders: Int): Long {
+        val bytes = utf8Length(serialized)
+        session.storedBytes = bytes
+        session.storedReminders = reminders
+        sessionSizeKnown = true
+        return bytes
+    }
+
+    /**
+     * Get all counters, i.e., the persisted ones together with those of this process.
+     */
+    fun getCounters(context: Context): Counters = synchronized(lock) {
+        val result = loadStored(context).copy()
+        result.add(session)
+        if (sessionSizeKnown) {
+            result.storedBytes = session.storedBytes
+            result.storedReminders = session.storedReminders
+        } else if (sessionAppendedReminders > 0) {
+            result.storedBytes = session.storedBytes
+            result.storedReminders += sessionAppendedReminders
+        }
+        result
+    }
+
+    /**
+     * Persist the counters of this process if at least [PERSIST_INTERVAL_NANOS] have passed since they were last
+     * persisted.
+     */
+    fun persistIfDue(context: Context) = synchronized(lock) {
+        if (System.nanoTime() - lastPersisted >= PERSIST_INTERVAL_NANOS) {
+            persist(context)
+        }
+    }
+
+    /**
+     * Persist the counters of this process and then finish the given broadcast, after which the process may be ended.
+     */
+    fun persistAndFinish(context: Context, pendingResult: BroadcastReceiver.PendingResult) {
+        try {
+            persist(context)
+        } finally {
+            pendingResult.finish()
+        }
+    }
+
+    /**
+     * Add the counters of this process to the persisted counters. Does nothing if no reads or writes have been recorded
+     * since they were last persisted.
+     */
+    fun persist(context: Context) = synchronized(lock) {
+        if (session.reads == 0L && session.writes == 0L) {
+            return@synchronized
+        }
+        val counters = getCounters(context)
+        Prefs.getDiagnosticsPrefs(context).edit()
+            .putString(PREF_DIAGNOSTICS_STORAGE_STATS, json.encodeToString(counters))
+            .apply()
+        stored = counters
+        resetSession()
+        lastPersisted = System.nanoTime()
+    }
+
+    /**
+     * Reset all counters.
+     */
+    fun reset(context: Context) = synchronized(lock) {
+        Prefs.getDiagnosticsPrefs(context).edit().remove(PREF_DIAGNOSTICS_STORAGE_STATS).apply()
+        stored = Counters()
+        resetSession()
+    }
+
+    private fun resetSession() {
+        session = Counters()
+        sessionSizeKnown = false
+        sessionAppendedReminders = 0
+    }
+
+    fun toJsonElement(counters: Counters): JsonElement = json.encodeToJsonElement(counters)
+
+    private fun loadStored(context: Context): Counters =
+        stored ?: (Prefs.getDiagnosticsPrefs(context).getString(PREF_DIAGNOSTICS_STORAGE_STATS, null)
+            ?.let {
+                try {
+                    json.decodeFromString<Counters>(it)
+                } catch (e: IllegalArgumentException) {
+                    null // Discard counters in an incompatible format
+                }
+            }
+            ?: Counters()).also { stored = it }
+
+    /**
+     * Number of bytes of the UTF-8 encoding of the given string (without encoding it).
+     */
+    private fun utf8Length(s: String): Long {
+        var bytes = 0L
+        var i = 0
+        while (i < s.length) {
+            val c = s[i]
+            bytes += when {
+                c.code < 0x80 -> 1
+                c.code < 0x800 -> 2
+                Character.isHighSurrogate(c) -> {
+                    i++ // A surrogate pair encodes one code point with 4 bytes
+                    4
+                }
+                else -> 3
+            }
+            i++
+        }
+        return bytes
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder
+
+import android.annotation.SuppressLint
+import android.content.Context
+import felixwiemuth.simplereminder.data.Template
+import felixwiemuth.simplereminder.ui.TemplateReminderActivity
+import kotlinx.serialization.decodeFromString
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Handles the persistent template storage. Templates are stored in their own preferences file, separately from the
+ * reminders, so that using a template does not require to load all reminders. The templates are cached in memory.
+ * The operations in this object are thread-safe.
+ */
+object TemplateStorage {
+    /**
+     * Is informed (on the thread performing the change) when the templates have changed.
+     */
+    fun interface ChangeListener {
+        fun onTemplatesChanged(templates: List<Template>)
+    }
+
+    private const val PREF_TEMPLATES = "templates"
+    private const val PREF_NEXTID = "nextid"
+
+    private val lock = Any()
+
+    /**
+     * The stored templates, or null if not loaded yet.
+     */
+    private var templates: List<Template>? = null
+
+    private val changeListeners = CopyOnWriteArrayList<ChangeListener>()
+
+    fun addChangeListener(listener: ChangeListener) {
+        changeListeners.add(listener)
+    }
+
+    fun removeChangeListener(listener: ChangeListener) {
+        changeListeners.remove(listener)
+    }
+
+    /**
+     * Get all templates in the order they were added.
+     */
+    fun getTemplates(context: Context): List<Template> = synchronized(lock) {
+        templates ?: (Prefs.getTemplatesPrefs(context).getString(PREF_TEMPLATES, null)
+            ?.let { Json.decodeFromString<List<Template>>(it) }
+            ?: emptyList()).also { templates = it }
+    }
+
+    /**
+     * Get the template with the given ID or null if it does not exist.
+     */
+    fun getTemplate(context: Context, id: Int): Template? = getTemplates(context).find { it.id == id }
+
+    /**
+     * Add the given templates, assigning new IDs (the IDs of the given templates are ignored).
+     *
+     * @return the added templates
+     */
+    fun addTemplates(context: Context, newTemplates: List<Template>): List<Template> {
+        val added: List<Template>
+        synchronized(lock) {
+            val prefs = Prefs.getTemplatesPrefs(context)
+            var nextId = prefs.getInt(PREF_NEXTID, 0)
+            added = newTemplates.map { it.copy(id = nextId++) }
+            write(context, getTemplates(context) + added, nextId)
+        }
+        onChanged(context)
+        return added
+    }
+
+    fun removeTemplate(context: Context, id: Int) {
+        synchronized(lock) {
+            write(context, getTemplates(context).filter { it.id != id }, null)
+        }
+        onChanged(context)
+    }
+
+    @SuppressLint("ApplySharedPref")
+    private fun write(context: Context, newTemplates: List<Template>, nextId: Int?) {
+        val editor = Prefs.getTemplatesPrefs(context).edit()
+            .putString(PREF_TEMPLATES, Json.encodeToString(newTemplates))
+        nextId?.let { editor.putInt(PREF_NEXTID, it) }
+        editor.commit()
+        templates = newTemplates
+    }
+
+    private fun onChanged(context: Context) {
+        val current = getTemplates(context)
+        TemplateReminderActivity.updateShortcuts(context, current)
+        for (listener in changeListeners) {
+            listener.onTemplatesChanged(current)
+        }
+    }
+}
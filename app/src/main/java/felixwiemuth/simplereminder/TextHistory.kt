@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder
+
+import android.content.Context
+import felixwiemuth.simplereminder.data.TextHistoryIndex
+import felixwiemuth.simplereminder.util.BackgroundExecutor
+
+/**
+ * Suggests reminder texts based on the texts of all stored reminders. The [TextHistoryIndex] is built from storage on
+ * first use in a process and then kept up to date by listening to [ReminderStorage] changes, which are applied on the
+ * [BackgroundExecutor] so that writers (possibly on the main thread) do not wait for the index.
+ */
+object TextHistory {
+    const val MAX_SUGGESTIONS = 5
+
+    private val lock = Any()
+
+    /**
+     * The index, or null if not built yet.
+     */
+    private var index: TextHistoryIndex? = null
+
+    private val changeListener = ReminderStorage.ChangeListener { _, changed, removed ->
+        BackgroundExecutor.execute {
+            synchronized(lock) {
+                index?.let { index ->
+                    removed.forEach { index.remove(it) }
+                    index.putAll(changed)
+                }
+            }
+        }
+    }
+
+    /**
+     * Build the index if this has not been done yet. Should not be called on the main thread.
+     */
+    fun prepare(context: Context) {
+        synchronized(lock) { getIndex(context) }
+    }
+
+    /**
+     * Get suggestions for the given beginning of a reminder text, best first. Should not be called on the main thread,
+     * as the index may have to be built first.
+     */
+    fun getSuggestions(context: Context, prefix: String): List<String> =
+        synchronized(lock) { getIndex(context).query(prefix, MAX_SUGGESTIONS, System.currentTimeMillis()) }
+
+    private fun getIndex(context: Context): TextHistoryIndex =
+        index ?: TextHistoryIndex().also { newIndex ->
+            // Changes committed after reading are applied after the lock is released (adding a reminder again has no effect)
+            ReminderStorage.addChangeListener(changeListener)
+            newIndex.putAll(ReminderStorage.getReminders(context))
+            index = newIndex
+        }
+}
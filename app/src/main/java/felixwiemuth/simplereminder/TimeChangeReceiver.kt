@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder
+
+import android.content.BroadcastReceiver
+import android.content.Context
+import android.content.Intent
+import androidx.core.os.UserManagerCompat
+import felixwiemuth.simplereminder.util.BackgroundExecutor
+import felixwiemuth.simplereminder.util.DateTimeUtil
+
+class TimeChangeReceiver : BroadcastReceiver() {
+
+    /**
+     * Updates what depends on the time zone or the wall-clock time when one of them is changed (see
+     * [ReminderManager.onClockChanged]).
+     */
+    override fun onReceive(context: Context, intent: Intent) {
+        if (intent.action != Intent.ACTION_TIMEZONE_CHANGED && intent.action != Intent.ACTION_TIME_CHANGED) {
+            return
+        }
+        DateTimeUtil.resetFormats()
+        // Before the device is unlocked after boot, reminders are scheduled from device-protected storage and
+        // rescheduled anyway after unlocking
+        if (!UserManagerCompat.isUserUnlocked(context)) {
+            return
+        }
+        AppInitializer.initialize(context, AppInitializer.Component.TIME_CHANGE)
+        val pendingResult = goAsync()
+        val appContext = context.applicationContext
+        BackgroundExecutor.execute {
+            try {
+                ReminderManager.onClockChanged(appContext, intent.action == Intent.ACTION_TIME_CHANGED)
+            } finally {
+                StorageStats.persistAndFinish(appContext, pendingResult)
+            }
+        }
+    }
+}
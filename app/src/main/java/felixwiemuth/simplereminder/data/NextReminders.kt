@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder.data
+
+import kotlinx.serialization.Serializable
+import java.util.*
+
+/**
+ * A small snapshot of the reminders which are relevant at a glance: all due reminders ([Reminder.Status.NOTIFIED])
+ * and the next few [Reminder.Status.SCHEDULED] reminders, each sorted by date. It is kept up to date on every change
+ * of the stored reminders, so that it can be shown (e.g., in a home screen widget) without loading all reminders.
+ */
+@Serializable
+data class NextReminders(
+    val due: List<Reminder> = emptyList(),
+    val upcoming: List<Reminder> = emptyList()
+) {
+    /**
+     * Get the snapshot resulting from adding the given (new) reminder, keeping at most [limit] upcoming reminders.
+     */
+    fun withAdded(reminder: Reminder, limit: Int): NextReminders =
+        when (reminder.status) {
+            Reminder.Status.NOTIFIED -> copy(due = (due + reminder).sorted())
+            Reminder.Status.SCHEDULED -> copy(upcoming = (upcoming + reminder).sorted().take(limit))
+            Reminder.Status.DONE -> this
+        }
+
+    /**
+     * The next time after [now] at which the presentation of this snapshot changes without the reminders changing:
+     * when the next upcoming reminder becomes due or, if earlier, when the day changes (dates are shown relative to
+     * the current day).
+     */
+    fun nextBoundary(now: Long): Long {
+        val midnight = Calendar.getInstance()
+        midnight.timeInMillis = now
+        midnight.set(Calendar.HOUR_OF_DAY, 0)
+        midnight.set(Calendar.MINUTE, 0)
+        midnight.set(Calendar.SECOND, 0)
+        midnight.set(Calendar.MILLISECOND, 0)
+        midnight.add(Calendar.DAY_OF_MONTH, 1)
+        val nextDue = upcoming.firstOrNull { it.time > now }?.time ?: Long.MAX_VALUE
+        return minOf(nextDue, midnight.timeInMillis)
+    }
+
+    companion object {
+        /**
+         * Build the snapshot of the given reminders, keeping at most [limit] upcoming reminders.
+         */
+        fun of(reminders: Iterable<Reminder>, limit: Int): NextReminders {
+            val due = ArrayList<Reminder>()
+            // The head of the heap is the latest of the earliest scheduled reminders found so far
+            val upcoming = PriorityQueue(limit + 1, Comparator<Reminder> { a, b -> b.compareTo(a) })
+            for (reminder in reminders) {
+                when (reminder.status) {
+                    Reminder.Status.NOTIFIED -> due.add(reminder)
+                    Reminder.Status.SCHEDULED -> {
+                        upcoming.add(reminder)
+                        if (upcoming.size > limit) {
+                            upcoming.poll()
+                        }
+                    }
+                    Reminder.Status.DONE -> {}
+                }
+            }
+            due.sort()
+            return NextReminders(due, upcoming.sorted())
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder.data
+
+import kotlinx.serialization.Serializable
+import java.util.*
+
+/**
+ * A rule by which a reminder repeats. A recurring reminder is stored once, with the date of its current occurrence;
+ * further occurrences are computed from that date when needed. Occurrences keep the time of day of the reminder
+ * (also across daylight saving time changes).
+ *
+ * @param interval the number of days (for [Frequency.DAILY]) or weeks (for [Frequency.WEEKLY]) between occurrences;
+ * ignored for [Frequency.WEEKDAYS]
+ * @since 0.9.15
+ */
+@Serializable
+data class Recurrence(
+    val frequency: Frequency,
+    val interval: Int = 1
+) {
+    enum class Frequency {
+        /**
+         * Every [interval] days.
+         */
+        DAILY,
+
+        /**
+         * Every [interval] weeks on the same day of week.
+         */
+        WEEKLY,
+
+        /**
+         * Every day from Monday to Friday.
+         */
+        WEEKDAYS
+    }
+
+    init {
+        require(interval >= 1) { "Interval must be >= 1." }
+    }
+
+    /**
+     * The number of days between two occurrences. For [Frequency.WEEKDAYS], the number of days of a period after which
+     * the occurrences repeat.
+     */
+    private val stepDays: Int
+        get() = when (frequency) {
+            Frequency.DAILY -> interval
+            Frequency.WEEKLY -> 7 * interval
+            Frequency.WEEKDAYS -> 7
+        }
+
+    /**
+     * Get the first occurrence after the given occurrence which is also after [after]. Missed occurrences are skipped
+     * without enumerating them.
+     *
+     * @param occurrence an occurrence of the series
+     * @param after time in milliseconds
+     */
+    fun next(occurrence: Date, after: Long): Date {
+        val c = Calendar.getInstance()
+        c.time = occurrence
+        // Skip whole periods to come close to (but not after) the wanted time; one period less accounts for days
+        // which are shorter due to a daylight saving time change
+        val periods = (after - occurrence.time) / (stepDays * DAY_MILLIS) - 1
+        if (periods > 0) {
+            c.add(Calendar.DAY_OF_MONTH, (periods * stepDays).toInt())
+        }
+        do {
+            step(c)
+        } while (c.timeInMillis <= after)
+        return c.time
+    }
+
+    /**
+     * Get a lazily computed sequence of the occurrences starting with the given one, ending before [until].
+     *
+     * @param occurrence an occurrence of the series
+     * @param until time in milliseconds
+     */
+    fun occurrences(occurrence: Date, until: Long): Sequence<Date> =
+        generateSequence(occurrence) { previous ->
+            val c = Calendar.getInstance()
+            c.time = previous
+            step(c)
+            c.time
+        }.takeWhile { it.time < until }
+
+    /**
+     * Advance the calendar to the next occurrence.
+     */
+    private fun step(c: Calendar) {
+        when (frequency) {
+            Frequency.DAILY -> c.add(Calendar.DAY_OF_MONTH, interval)
+            Frequency.WEEKLY -> c.add(Calendar.DAY_OF_MONTH, 7 * interval)
+            Frequency.WEEKDAYS -> do {
+                c.add(Calendar.DAY_OF_MONTH, 1)
+            } while (c[Calendar.DAY_OF_WEEK] == Calendar.SATURDAY || c[Calendar.DAY_OF_WEEK] == Calendar.SUNDAY)
+        }
+    }
+
+    companion object {
+        private const val DAY_MILLIS = 24 * 60 * 60 * 1000L
+    }
+}
@@ -17,7 +17,7 @@
 package felixwiemuth.simplereminder.data
 
 import felixwiemuth.simplereminder.data.Reminder.Companion.MAX_REMINDER_ID
-import felixwiemuth.simplereminder.util.DateSerializer
+import kotlinx.serialization.SerialName
 import kotlinx.serialization.Serializable
 import kotlinx.serialization.builtins.ListSerializer
 import kotlinx.serialization.encodeToString
@@ -33,10 +33,11 @@ constructor(
     val id: Int,
 
     /**
-     * Reminder's due date.
+     * Reminder's due date in milliseconds since the epoch. Stored as "date", in the format of
+     * [felixwiemuth.simplereminder.util.DateSerializer].
      */
-    @Serializable(with = DateSerializer::class)
-    val date: Date,
+    @SerialName("date")
+    val time: Long,
 
     /**
      * The interval in minutes with which this reminder should be repeated until dismissed.
@@ -47,7 +48,24 @@ constructor(
 
     val text: String = "",
 
-    var status: Status = Status.SCHEDULED
+    val status: Status = Status.SCHEDULED,
+
+    /**
+     * The rule by which this reminder repeats, or null if it does not repeat. For a recurring reminder, [time] is the
+     * date of the current occurrence.
+     * This field is optional.
+     * @since 0.9.15
+     */
+    val recurrence: Recurrence? = null,
+
+    /**
+     * For a recurring reminder which was snoozed, the date of its current occurrence in milliseconds since the epoch,
+     * from which further occurrences are calculated, while [time] is when the snooze ends. Null otherwise, the current
+     * occurrence being [time].
+     * This field is optional.
+     * @since 0.9.15
+     */
+    val occurrence: Long? = null
 ) : Comparable<Reminder> {
     /**
      * Status of saved reminders.
@@ -69,22 +87,37 @@ constructor(
         DONE
     }
 
+    constructor(
+        id: Int,
+        date: Date,
+        naggingRepeatInterval: Int = 0,
+        text: String = "",
+        status: Status = Status.SCHEDULED,
+        recurrence: Recurrence? = null
+    ) : this(id, date.time, naggingRepeatInterval, text, status, recurrence)
+
     init {
         require(id in 0..MAX_REMINDER_ID && id % 2 == 0) { "Id must be even, >= 0 and <= $MAX_REMINDER_ID." }
     }
 
+    /**
+     * Get a new [Date] instance for the reminder's due date. Prefer [time] where a [Date] is not needed.
+     */
+    val date: Date
+        get() = Date(time)
+
     /**
      * Get a new [Calendar] instance set to the reminder's date.
      */
     val calendar: Calendar
         get() {
             val c = Calendar.getInstance()
-            c.time = date
+            c.timeInMillis = time
             return c
         }
 
     override fun compareTo(other: Reminder): Int {
-        return date.compareTo(other.date)
+        return time.compareTo(other.time)
     }
 
     val isNagging: Boolean
@@ -92,11 +125,45 @@ constructor(
     val naggingRepeatIntervalInMillis: Long
         get() = (60 * 1000 * naggingRepeatInterval).toLong()
 
+    val isRecurring: Boolean
+        get() = recurrence != null
+
+    /**
+     * The date of the current occurrence in milliseconds since the epoch, which differs from [time] if a recurring
+     * reminder was snoozed (see [occurrence]).
+     */
+    val occurrenceTime: Long
+        get() = occurrence ?: time
+
+    /**
+     * Get this reminder scheduled for the given time, e.g., when it is snoozed. A recurring reminder keeps the time of
+     * its current occurrence, so that its further occurrences do not move.
+     */
+    fun snoozedUntil(time: Long): Reminder =
+        copy(time = time, status = Status.SCHEDULED, occurrence = if (recurrence != null) occurrenceTime else null)
+
+    /**
+     * Get this reminder with the given status.
+     */
+    fun withStatus(status: Status): Reminder = if (status == this.status) this else copy(status = status)
+
+    /**
+     * Get the reminder resulting from the user marking this reminder as done at the given time. A non-recurring
+     * reminder gets status [Status.DONE], a recurring reminder is scheduled for its next occurrence after the current
+     * one (see [occurrenceTime]) and after [now] (missed occurrences are skipped).
+     */
+    fun completed(now: Long): Reminder =
+        if (recurrence == null) {
+            copy(status = Status.DONE)
+        } else {
+            copy(time = recurrence.next(Date(occurrenceTime), now).time, status = Status.SCHEDULED, occurrence = null)
+        }
+
     companion object {
         const val MAX_REMINDER_ID = 1000000
 
         @JvmStatic
-        fun builder(date: Date, text: String): Builder = Builder(date = date, text = text)
+        fun builder(date: Date, text: String): Builder = Builder(time = date.time, text = text)
 
         @JvmStatic
         fun toJson(reminders: List<Reminder?>?): String =
@@ -116,14 +183,16 @@ constructor(
         @JvmField
         var id: Int? = null,
         @JvmField
-        val date: Date,
+        val time: Long,
         @JvmField
         var naggingRepeatInterval: Int = 0,
         @JvmField
         val text: String = "",
         @JvmField
-        var status: Status = Status.SCHEDULED
+        var status: Status = Status.SCHEDULED,
+        @JvmField
+        var recurrence: Recurrence? = null
     ) {
-        fun build() = Reminder(requireNotNull(id), date, naggingRepeatInterval, text, status)
+        fun build() = Reminder(requireNotNull(id), time, naggingRepeatInterval, text, status, recurrence)
     }
 }
\ No newline at end of file
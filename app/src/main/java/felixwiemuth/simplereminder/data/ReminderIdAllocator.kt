@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder.data
+
+import felixwiemuth.simplereminder.data.Reminder.Companion.MAX_REMINDER_ID
+import kotlinx.serialization.Serializable
+import java.util.*
+
+/**
+ * Allocates IDs for new reminders. IDs are first handed out in increasing order. When all IDs up to [MAX_REMINDER_ID]
+ * have been used once, IDs of removed reminders are recycled from a bitmap of recyclable IDs, searched from where the
+ * last search stopped (next fit, wrapping around), so that allocation takes constant amortized time. The bitmap is
+ * built once from the IDs in use when recycling starts and then kept up to date.
+ *
+ * A freed ID is quarantined for [QUARANTINE_MILLIS] before it becomes recyclable, so that pending intents and
+ * notifications which might still refer to a removed reminder (e.g., an alarm being delivered while the reminder is
+ * removed) do not act on a new reminder. Freed IDs are only recorded once fewer than [MAX_QUARANTINED] fresh IDs
+ * remain (see [recordsFreedIds]), as the quarantine could not hold more anyway; when the bitmap is built, IDs freed
+ * before are recyclable right away, while those still quarantined are excluded.
+ *
+ * Only even IDs are allocated, so that the request codes derived from reminder IDs stay unique.
+ *
+ * @param nextFreshId the lowest ID which has never been allocated
+ * @param cursor the ID where the next search for a recyclable ID starts
+ * @param recyclable the recyclable IDs (bit i standing for ID 2i), or null if not built yet
+ * @param quarantined the quarantined IDs, oldest first
+ */
+class ReminderIdAllocator(
+    nextFreshId: Int = 0,
+    cursor: Int = 0,
+    recyclable: BitSet? = null,
+    quarantined: List<FreedId> = emptyList()
+) {
+    @Serializable
+    data class FreedId(val id: Int, val time: Long)
+
+    var nextFreshId = nextFreshId
+        private set
+
+    var cursor = cursor
+        private set
+
+    /**
+     * The recyclable IDs (bit i standing for ID 2i), or null if they have not been needed yet.
+     */
+    var recyclable = recyclable
+        private set
+
+    private val quarantined = ArrayDeque(quarantined)
+
+    /**
+     * Whether [recyclable] changed since the last call of [markPersisted].
+     */
+    var recyclableChanged = false
+        private set
+
+    /**
+     * Whether [freedIds] changed since the last call of [markPersisted].
+     */
+    var freedIdsChanged = false
+        private set
+
+    /**
+     * Whether the next allocated ID will be one that has never been used before.
+     */
+    val hasFreshIds: Boolean
+        get() = nextFreshId <= MAX_REMINDER_ID
+
+    /**
+     * Whether freed IDs have to be recorded with [free], i.e., whether fewer than [MAX_QUARANTINED] fresh IDs remain.
+     * IDs freed before are recycled only after at least that many other IDs have been allocated.
+     */
+    val recordsFreedIds: Boolean
+        get() = nextFreshId > MAX_REMINDER_ID - 2 * MAX_QUARANTINED
+
+    /**
+     * The quarantined IDs, oldest first.
+     */
+    val freedIds: Collection<FreedId>
+        get() = quarantined
+
+    /**
+     * Allocate an ID.
+     *
+     * @param now the current time in milliseconds
+     * @param usedIds supplies the IDs of all existing reminders; only called when the recyclable IDs have to be built
+     * @throws IllegalStateException if all IDs are in use or quarantined
+     */
+    fun allocate(now: Long, usedIds: () -> Iterable<Int>): Int {
+        if (hasFreshIds) {
+            val id = nextFreshId
+            nextFreshId += 2
+            return id
+        }
+        val recyclable = recyclable ?: buildRecyclable(usedIds())
+        expire(now)
+        var slot = recyclable.nextSetBit(cursor / 2)
+        if (slot < 0) {
+            slot = recyclable.nextSetBit(0)
+            check(slot >= 0) { "All reminder IDs are in use or quarantined." }
+        }
+        recyclable.clear(slot)
+        recyclableChanged = true
+        val id = slot * 2
+        cursor = if (id + 2 > MAX_REMINDER_ID) 0 else id + 2
+        return id
+    }
+
+    private fun buildRecyclable(usedIds: Iterable<Int>): BitSet {
+        val bits = BitSet(SLOTS)
+        bits.set(0, SLOTS)
+        for (id in usedIds) {
+            bits.clear(id / 2)
+        }
+        for ((id) in quarantined) {
+            bits.clear(id / 2)
+        }
+        recyclable = bits
+        recyclableChanged = true
+        return bits
+    }
+
+    /**
+     * Make sure that the given IDs, which were assigned to reminders from elsewhere (e.g., imported reminders), are not
+     * allocated.
+     */
+    fun reserve(ids: Collection<Int>) {
+        for (id in ids) {
+            if (id >= nextFreshId) {
+                nextFreshId = id + 2
+            }
+            recyclable?.let {
+                if (it[id / 2]) {
+                    it.clear(id / 2)
+                    recyclableChanged = true
+                }
+            }
+        }
+        val reserved = ids.toSet()
+        if (quarantined.removeAll { it.id in reserved }) {
+            freedIdsChanged = true
+        }
+    }
+
+    /**
+     * Record that the reminders with the given IDs were removed, so that their IDs are not recycled within the
+     * quarantine period. Does nothing unless [recordsFreedIds].
+     */
+    fun free(ids: Iterable<Int>, now: Long) {
+        if (!recordsFreedIds) {
+            return
+        }
+        expire(now)
+        for (id in ids) {
+            quarantined.addLast(FreedId(id, now))
+            freedIdsChanged = true
+        }
+        // Release the oldest ones early
+        while (quarantined.size > MAX_QUARANTINED) {
+            release(quarantined.removeFirst())
+        }
+    }
+
+    /**
+     * Record that the current state has been persisted.
+     */
+    fun markPersisted() {
+        recyclableChanged = false
+        freedIdsChanged = false
+    }
+
+    /**
+     * Make the IDs recyclable which were freed long enough ago.
+     */
+    private fun expire(now: Long) {
+        while (quarantined.isNotEmpty() && now - quarantined.first().time >= QUARANTINE_MILLIS) {
+            release(quarantined.removeFirst())
+        }
+    }
+
+    private fun release(freed: FreedId) {
+        freedIdsChanged = true
+        // If not built yet, the ID is included when building as it is not in use
+        recyclable?.let {
+            it.set(freed.id / 2)
+            recyclableChanged = true
+        }
+    }
+
+    companion object {
+        /**
+         * Number of (even) IDs.
+         */
+        private const val SLOTS = MAX_REMINDER_ID / 2 + 1
+
+        /**
+         * Time after which the ID of a removed reminder may be recycled.
+         */
+        const val QUARANTINE_MILLIS = 7 * 24 * 60 * 60 * 1000L
+
+        /**
+         * Maximum number of quarantined IDs. When more reminders are removed within the quarantine period, the oldest
+         * ones leave the quarantine early.
+         */
+        const val MAX_QUARANTINED = 10000
+
+        /**
+         * Encode the given bit set as bytes, bit i being bit i % 8 of byte i / 8 (like [BitSet.toByteArray], which
+         * is not available on all supported API levels).
+         */
+        fun toBytes(bits: BitSet): ByteArray {
+            val bytes = ByteArray((bits.length() + 7) / 8)
+            var i = bits.nextSetBit(0)
+            while (i >= 0) {
+                bytes[i / 8] = (bytes[i / 8].toInt() or (1 shl i % 8)).toByte()
+                i = bits.nextSetBit(i + 1)
+            }
+            return bytes
+        }
+
+        /**
+         * Decode a bit set encoded with [toBytes].
+         */
+        fun fromBytes(bytes: ByteArray): BitSet {
+            val bits = BitSet(bytes.size * 8)
+            for (i in bytes.indices) {
+                val b = bytes[i].toInt()
+                for (j in 0 until 8) {
+                    if (b and (1 shl j) != 0) {
+                        bits.set(i * 8 + j)
+                    }
+                }
+            }
+            return bits
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder.data
+
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+
+/**
+ * Reads and writes reminders as newline-delimited JSON (one reminder per line, in the same format as stored), one
+ * reminder at a time, so that files of any size can be processed without holding them in memory.
+ */
+object ReminderNdjson {
+    const val MIME_TYPE = "application/x-ndjson"
+
+    /**
+     * Thrown when a line of a file does not describe a valid reminder.
+     *
+     * @param line the number of the line, starting from 1
+     */
+    class FormatException(val line: Int, cause: Throwable) : IOException("Invalid reminder in line $line.", cause)
+
+    /**
+     * Write the given reminders to the given stream. The stream is not closed.
+     *
+     * @param onProgress called after every [PROGRESS_INTERVAL] reminders with the number of reminders written so far
+     * @return the number of reminders written
+     */
+    fun write(reminders: Sequence<Reminder>, out: OutputStream, onProgress: (Int) -> Unit = {}): Int {
+        val writer = out.bufferedWriter()
+        var count = 0
+        for (reminder in reminders) {
+            writer.write(Json.encodeToString(reminder))
+            writer.write('\n'.code)
+            count++
+            if (count % PROGRESS_INTERVAL == 0) {
+                onProgress(count)
+            }
+        }
+        writer.flush()
+        return count
+    }
+
+    /**
+     * Read reminders from the given stream and pass them on in batches. Empty lines are skipped. The stream is not
+     * closed.
+     *
+     * @param batchSize maximum number of reminders per batch
+     * @param onBatch called with each batch of reminders in the order of the file
+     * @return the number of reminders read
+     * @throws FormatException if a line does not describe a valid reminder (the batches before have been passed on)
+     */
+    fun read(input: InputStream, batchSize: Int, onBatch: (List<Reminder>) -> Unit): Int {
+        var batch = ArrayList<Reminder>(batchSize)
+        var count = 0
+        for ((i, line) in input.bufferedReader().lineSequence().withIndex()) {
+            if (line.isBlank()) {
+                continue
+            }
+            val reminder = try {
+                Json.decodeFromString<Reminder>(line)
+            } catch (e: IllegalArgumentException) { // Includes SerializationException, also thrown for invalid IDs
+                throw FormatException(i + 1, e)
+            }
+            batch.add(reminder)
+            count++
+            if (batch.size == batchSize) {
+                onBatch(batch)
+                batch = ArrayList(batchSize)
+            }
+        }
+        if (batch.isNotEmpty()) {
+            onBatch(batch)
+        }
+        return count
+    }
+
+    private const val PROGRESS_INTERVAL = 500
+}
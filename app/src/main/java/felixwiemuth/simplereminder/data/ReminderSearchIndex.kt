@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder.data
+
+import java.util.*
+
+/**
+ * An inverted index over the texts of reminders. Texts are split into tokens (maximal sequences of letters and digits,
+ * compared case-insensitively). For each token, the index keeps the reminders containing it together with the number
+ * of occurrences.
+ *
+ * A query matches the reminders which contain, for each token of the query, a token starting with it. Results are
+ * ranked by the number of matching tokens, where tokens matching a query token exactly count [EXACT_MATCH_WEIGHT]
+ * times, and then by date, latest first.
+ *
+ * The tokens are kept in a sorted map, so that the tokens with a given prefix form a range. The index is updated
+ * incrementally when reminders are added, changed or removed. It also keeps the indexed reminders, so that results
+ * can be shown without loading reminders from storage.
+ *
+ * Not thread-safe.
+ */
+class ReminderSearchIndex {
+    /**
+     * For each token, the number of its occurrences by reminder ID.
+     */
+    private val postings = TreeMap<String, HashMap<Int, Int>>()
+
+    /**
+     * The indexed reminders by ID.
+     */
+    private val reminders = HashMap<Int, Reminder>()
+
+    val size: Int
+        get() = reminders.size
+
+    /**
+     * Add the given reminder to the index, replacing a previous version of it.
+     */
+    fun put(reminder: Reminder) {
+        remove(reminder.id)
+        reminders[reminder.id] = reminder
+        for (token in tokenize(reminder.text)) {
+            val occurrences = postings.getOrPut(token) { HashMap() }
+            occurrences[reminder.id] = (occurrences[reminder.id] ?: 0) + 1
+        }
+    }
+
+    /**
+     * Remove the reminder with the given ID from the index, if present.
+     */
+    fun remove(id: Int) {
+        val reminder = reminders.remove(id) ?: return
+        for (token in tokenize(reminder.text).distinct()) {
+            val occurrences = postings[token] ?: continue
+            occurrences.remove(id)
+            if (occurrences.isEmpty()) {
+                postings.remove(token)
+            }
+        }
+    }
+
+    /**
+     * Get the up to [limit] best ranked reminders matching the given query, best first. A query without tokens
+     * matches nothing.
+     */
+    fun search(query: String, limit: Int): List<Reminder> {
+        var scores: HashMap<Int, Int>? = null
+        for (queryToken in tokenize(query).distinct()) {
+            val tokenScores = HashMap<Int, Int>()
+            for ((token, occurrences) in postings.subMap(queryToken, true, queryToken + Char.MAX_VALUE, false)) {
+                val weight = if (token == queryToken) EXACT_MATCH_WEIGHT else 1
+                for ((id, count) in occurrences) {
+                    // Only reminders which matched all previous query tokens can be results
+                    if (scores == null || scores.containsKey(id)) {
+                        tokenScores[id] = (tokenScores[id] ?: 0) + weight * count
+                    }
+                }
+            }
+            scores?.let { previous -> tokenScores.entries.forEach { it.setValue(it.value + previous.getValue(it.key)) } }
+            scores = tokenScores
+            if (tokenScores.isEmpty()) {
+                break
+            }
+        }
+        if (scores == null) {
+            return emptyList()
+        }
+        // The head of the heap is the worst of the best results found so far
+        val order = Comparator<Map.Entry<Int, Int>> { a, b ->
+            if (a.value != b.value) {
+                a.value.compareTo(b.value)
+            } else {
+                reminders.getValue(a.key).time.compareTo(reminders.getValue(b.key).time)
+            }
+        }
+        val heap = PriorityQueue(limit + 1, order)
+        for (entry in scores.entries) {
+            heap.add(entry)
+            if (heap.size > limit) {
+                heap.poll()
+            }
+        }
+        return heap.sortedWith { a, b -> order.compare(b, a) }.map { reminders.getValue(it.key) }
+    }
+
+    companion object {
+        /**
+         * How many times a token equal to a query token counts compared to a token only starting with it.
+         */
+        const val EXACT_MATCH_WEIGHT = 2
+
+        private val TOKEN_SEPARATOR = Regex("[^\\p{L}\\p{N}]+")
+
+        fun tokenize(text: String): List<String> =
+            text.lowercase(Locale.ROOT).split(TOKEN_SEPARATOR).filter { it.isNotEmpty() }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder.data
+
+import java.util.*
+
+/**
+ * An immutable snapshot of the stored reminders. A change of the stored reminders results in a new snapshot which
+ * shares the unchanged (immutable) reminders with the previous one, so that a snapshot can be held and read on any
+ * thread without locking or copying.
+ *
+ * @param version the number of changes published before this snapshot (see [ReminderVersions])
+ */
+class ReminderSnapshot(reminders: List<Reminder>, val version: Long = 0) {
+    /**
+     * The reminders in the order in which they are stored.
+     */
+    val reminders: List<Reminder> = Collections.unmodifiableList(ArrayList(reminders))
+
+    /**
+     * The reminders by ID, built when first needed.
+     */
+    private val byId: Map<Int, Reminder> by lazy { this.reminders.associateBy { it.id } }
+
+    val size: Int
+        get() = reminders.size
+
+    /**
+     * Get the reminder with the given ID, or null if there is none.
+     */
+    operator fun get(id: Int): Reminder? = byId[id]
+
+    /**
+     * Get the next version of this snapshot, consisting of the given reminders.
+     */
+    fun next(reminders: List<Reminder>): ReminderSnapshot = ReminderSnapshot(reminders, version + 1)
+
+    /**
+     * Get the next version of this snapshot, resulting from adding the given reminder, which must have a new ID.
+     */
+    fun withAdded(reminder: Reminder): ReminderSnapshot = next(reminders + reminder)
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder.data
+
+/**
+ * Versioned snapshots of the stored reminders (multi-version concurrency control). A writer prepares the next version
+ * during its transaction and publishes it atomically after committing; readers get the latest published
+ * [ReminderSnapshot] in constant time without locking, and keep a consistent view for as long as they hold it.
+ *
+ * Writers must be serialized by the caller: all methods except [latest] may only be called while holding the lock
+ * guarding the stored reminders.
+ */
+class ReminderVersions {
+    @Volatile
+    private var published: ReminderSnapshot? = null
+
+    /**
+     * The version prepared by the current transaction, if any.
+     */
+    private var pending: ReminderSnapshot? = null
+
+    /**
+     * The latest published snapshot, or null if the reminders have not been loaded or written yet.
+     */
+    val latest: ReminderSnapshot?
+        get() = published
+
+    /**
+     * Publish the given reminders as loaded from storage, if no snapshot is published yet.
+     *
+     * @return the latest snapshot
+     */
+    fun load(reminders: List<Reminder>): ReminderSnapshot =
+        published ?: ReminderSnapshot(reminders).also { published = it }
+
+    /**
+     * Prepare the given reminders as the next version.
+     */
+    fun prepare(reminders: List<Reminder>) {
+        pending = published?.next(reminders) ?: ReminderSnapshot(reminders)
+    }
+
+    /**
+     * Prepare the next version resulting from adding the given reminder, which must have a new ID. Does nothing if
+     * no snapshot is published yet, as there is nothing to add it to without loading the reminders.
+     */
+    fun prepareAdded(reminder: Reminder) {
+        pending = published?.withAdded(reminder)
+    }
+
+    /**
+     * Publish the prepared version, if any. Call after the transaction has been committed.
+     */
+    fun publish() {
+        pending?.let { published = it }
+        pending = null
+    }
+
+    /**
+     * Discard the prepared version, if any. Call when the transaction ends without being committed.
+     */
+    fun discard() {
+        pending = null
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder.data
+
+import kotlinx.serialization.Serializable
+
+/**
+ * A template from which reminders can be created with one tap.
+ */
+@Serializable
+data class Template(
+    /**
+     * ID of the template, assigned by [felixwiemuth.simplereminder.TemplateStorage].
+     */
+    val id: Int,
+
+    val text: String,
+
+    /**
+     * Time in minutes from creating a reminder from this template until the reminder is due.
+     */
+    val delay: Int,
+
+    /**
+     * See [Reminder.naggingRepeatInterval].
+     */
+    val naggingRepeatInterval: Int = 0
+) {
+    /**
+     * Get a builder for a reminder from this template which is due [delay] minutes after the given time.
+     */
+    fun toReminderBuilder(now: Long): Reminder.Builder =
+        Reminder.Builder(
+            time = now + delay * 60 * 1000L,
+            naggingRepeatInterval = naggingRepeatInterval,
+            text = text
+        )
+
+    companion object {
+        /**
+         * Delay of templates created from reminders which are not due in the future.
+         */
+        const val DEFAULT_DELAY = 60
+
+        /**
+         * Create a template from the given reminder (the ID is assigned when adding it to the storage). The delay is
+         * the time from now until the reminder is due, rounded up to minutes, or [DEFAULT_DELAY] if it is not in the future.
+         */
+        @JvmStatic
+        fun fromReminder(reminder: Reminder, now: Long): Template {
+            val millisUntilDue = reminder.time - now
+            val delay = if (millisUntilDue > 0) ((millisUntilDue + 59999) / 60000).toInt() else DEFAULT_DELAY
+            return Template(0, reminder.text, delay, reminder.naggingRepeatInterval)
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder.data
+
+import java.util.*
+
+/**
+ * An index of reminder texts to look up previously used texts by prefix. Texts are compared case-insensitively and
+ * ignoring surrounding whitespace. For each text, the index counts the reminders with that text and keeps the latest
+ * date of such a reminder. Results are ranked by the count weighted by recency, where the weight halves every
+ * [RECENCY_HALF_LIFE] milliseconds.
+ *
+ * The entries are kept in a list sorted by normalized text, so that the entries with a given prefix form a range which
+ * is found by binary search. The index is built with [putAll], which sorts the new entries once, and then updated
+ * incrementally when reminders are added, changed or removed.
+ *
+ * Not thread-safe.
+ */
+class TextHistoryIndex {
+    private class Entry(
+        /**
+         * The normalized text.
+         */
+        val key: String,
+        /**
+         * The text as entered for the latest reminder.
+         */
+        var text: String,
+        var count: Int,
+        var lastUsed: Long
+    ) {
+        /**
+         * Count a reminder with this entry's text, as given, due at the given time.
+         */
+        fun add(text: String, time: Long) {
+            count++
+            if (time >= lastUsed) {
+                lastUsed = time
+                this.text = text
+            }
+        }
+    }
+
+    /**
+     * Sorted by [Entry.key].
+     */
+    private val entries = ArrayList<Entry>()
+
+    /**
+     * The key under which each indexed reminder (by ID) is counted.
+     */
+    private val keysById = HashMap<Int, String>()
+
+    val size: Int
+        get() = entries.size
+
+    /**
+     * Add the given reminder to the index, replacing a previous version of it.
+     */
+    fun put(reminder: Reminder) {
+        remove(reminder.id)
+        val text = reminder.text.trim()
+        val key = normalize(text)
+        if (key.isEmpty()) {
+            return
+        }
+        keysById[reminder.id] = key
+        val i = search(key)
+        if (i >= 0) {
+            entries[i].add(text, reminder.time)
+        } else {
+            entries.add(-i - 1, Entry(key, text, 1, reminder.time))
+        }
+    }
+
+    /**
+     * Add the given reminders to the index, replacing previous versions of them. Of several reminders with the same ID,
+     * the last one is added. Takes O(n log n) time for n new texts instead of O(n) per new text with [put].
+     */
+    fun putAll(reminders: Iterable<Reminder>) {
+        val added = HashMap<String, Entry>()
+        // Only the last one per ID, as [remove] does not find reminders added in this call, which are not in the
+        // entries yet
+        for (reminder in reminders.associateBy { it.id }.values) {
+            remove(reminder.id)
+            val text = reminder.text.trim()
+            val key = normalize(text)
+            if (key.isEmpty()) {
+                continue
+            }
+            keysById[reminder.id] = key
+            val i = search(key)
+            val entry = if (i >= 0) entries[i] else added[key]
+            if (entry != null) {
+                entry.add(text, reminder.time)
+            } else {
+                added[key] = Entry(key, text, 1, reminder.time)
+            }
+        }
+        if (added.isEmpty()) {
+            return
+        }
+        // Merge the sorted new entries into the entries
+        val sorted = added.values.sortedBy { it.key }
+        val merged = ArrayList<Entry>(entries.size + sorted.size)
+        var i = 0
+        for (entry in sorted) {
+            while (i < entries.size && entries[i].key < entry.key) {
+                merged.add(entries[i++])
+            }
+            merged.add(entry)
+        }
+        merged.addAll(entries.subList(i, entries.size))
+        entries.clear()
+        entries.addAll(merged)
+    }
+
+    /**
+     * Remove the reminder with the given ID from the index, if present. The last use of its text is not updated.
+     */
+    fun remove(id: Int) {
+        val key = keysById.remove(id) ?: return
+        val i = search(key)
+        if (i >= 0) {
+            val entry = entries[i]
+            entry.count--
+            if (entry.count == 0) {
+                entries.removeAt(i)
+            }
+        }
+    }
+
+    /**
+     * Get the up to [limit] best ranked texts starting with the given prefix, best first. A text equal to the prefix
+     * is not included.
+     *
+     * @param now the current time in milliseconds, used for ranking by recency
+     */
+    fun query(prefix: String, limit: Int, now: Long): List<String> {
+        val key = normalize(prefix)
+        val heap = PriorityQueue<Pair<Entry, Double>>(limit + 1, compareBy { it.second })
+        var i = search(key).let { if (it < 0) -it - 1 else it }
+        while (i < entries.size && entries[i].key.startsWith(key)) {
+            val entry = entries[i]
+            if (entry.key != key) {
+                heap.add(entry to score(entry, now))
+                if (heap.size > limit) {
+                    heap.poll()
+                }
+            }
+            i++
+        }
+        return heap.sortedByDescending { it.second }.map { it.first.text }
+    }
+
+    /**
+     * The logarithm of count * 0.5^(age / [RECENCY_HALF_LIFE]), which ranks the same but is cheaper to compute.
+     */
+    private fun score(entry: Entry, now: Long): Double {
+        val age = (now - entry.lastUsed).coerceAtLeast(0)
+        return Math.log(entry.count.toDouble()) - age * LN2_PER_HALF_LIFE
+    }
+
+    private fun search(key: String): Int = entries.binarySearch { it.key.compareTo(key) }
+
+    private fun normalize(text: String): String = text.trim().lowercase()
+
+    companion object {
+        const val RECENCY_HALF_LIFE = 30 * 24 * 60 * 60 * 1000L
+
+        private val LN2_PER_HALF_LIFE = Math.log(2.0) / RECENCY_HALF_LIFE
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package felixwiemuth.simplereminder.ui
+
+import android.content.Intent
+import android.os.Build
+import android.os.Bundle
+import android.text.format.Formatter
+import android.widget.Toast
+import androidx.annotation.StringRes
+import androidx.preference.Preference
+import androidx.preference.PreferenceFragmentCompat
+import felixwiemuth.simplereminder.AlarmStats
+import felixwiemuth.simplereminder.BuildConfig
+import felixwiemuth.simplereminder.R
+import felixwiemuth.simplereminder.StorageStats
+import felixwiemuth.simplereminder.util.AlarmManagerUtil.AlarmApi
+import felixwiemuth.simplereminder.util.DateTimeUtil
+import kotlinx.serialization.json.buildJsonObject
+import kotlinx.serialization.json.put
+import java.util.Date
+import java.util.Locale
+
+/**
+ * Displays performance data collected by the app and allows to export it.
+ */
+class DiagnosticsFragment : PreferenceFragmentCompat() {
+    override fun onCreatePreferences(savedInstanceState: Bundle?, rootKey: String?) {
+        setPreferencesFromResource(R.xml.preferences_diagnostics, rootKey)
+
+        findPreference<Preference>(getString(R.string.prefkey_diagnostics_export))?.onPreferenceClickListener =
+            Preference.OnPreferenceClickListener {
+                exportDiagnostics()
+                true
+            }
+
+        findPreference<Preference>(getString(R.string.prefkey_diagnostics_reset))?.onPreferenceClickListener =
+            Preference.OnPreferenceClickListener {
+                StorageStats.reset(requireContext())
+                AlarmStats.reset(requireContext())
+                updateSummaries()
+                Toast.makeText(context, R.string.toast_diagnostics_reset, Toast.LENGTH_LONG).show()
+                true
+            }
+    }
+
+    override fun onResume() {
+        super.onResume()
+        updateSummaries()
+    }
+
+    private fun updateSummaries() {
+        val counters = StorageStats.getCounters(requireContext())
+        findPreference<Preference>(getString(R.string.prefkey_diagnostics_storage))?.summary = listOf(
+            getString(R.string.diagnostics_since, DateTimeUtil.formatDateTime(Date(counters.since))),
+            getString(
+                R.string.diagnostics_storage_size,
+                counters.storedReminders,
+                Formatter.formatShortFileSize(context, counters.storedBytes)
+            ),
+            getString(
+                R.string.diagnostics_storage_operations,
+                counters.reads,
+                counters.writes,
+                Formatter.formatShortFileSize(context, counters.bytesSerialized)
+            ),
+            formatLatency(R.string.diagnostics_latency_decode, counters.decode),
+            formatLatency(R.string.diagnostics_latency_encode, counters.encode),
+            formatLatency(R.string.diagnostics_latency_lock_wait, counters.lockWait),
+            formatLatency(R.string.diagnostics_latency_lock_hold, counters.lockHold),
+            formatLatency(R.string.diagnostics_latency_commit, counters.commit)
+        ).joinToString("\n")
+
+        val deliveries = AlarmStats.getDeliveryLog(requireContext())
+        val recorded = deliveries.recorded
+        findPreference<Preference>(getString(R.string.prefkey_diagnostics_alarms))?.summary =
+            if (recorded.isEmpty()) {
+                getString(R.string.diagnostics_alarms_none)
+            } else {
+                (listOf(
+                    getString(
+                        R.string.diagnostics_alarms_recorded,
+                        recorded.size,
+                        DateTimeUtil.formatDateTime(Date(recorded.first().delivered))
+                    )
+                ) + deliveries.summarize().map { (api, summary) ->
+                    getString(
+                        R.string.diagnostics_alarms_api,
+                        getString(
+                            when (api) {
+                                AlarmApi.SET -> R.string.diagnostics_alarm_api_set
+                                AlarmApi.SET_EXACT -> R.string.diagnostics_alarm_api_set_exact
+                                AlarmApi.SET_EXACT_AND_ALLOW_WHILE_IDLE -> R.string.diagnostics_alarm_api_set_exact_and_allow_while_idle
+                            }
+                        ),
+                        summary.count,
+                        formatDrift(summary.median),
+                        formatDrift(summary.p95),
+                        formatDrift(summary.max)
+                    )
+                }).joinToString("\n")
+            }
+    }
+
+    private fun formatLatency(@StringRes label: Int, histogram: StorageStats.LatencyHistogram): String =
+        getString(
+            R.string.diagnostics_latency,
+            getString(label),
+            formatMicros(histogram.percentileMicros(50.0)),
+            formatMicros(histogram.percentileMicros(95.0)),
+            formatMicros(histogram.maxMicros)
+        )
+
+    private fun formatMicros(micros: Long): String = String.format(Locale.US, "%.1f ms", micros / 1000.0)
+
+    private fun formatDrift(millis: Long): String = String.format(Locale.US, "%.1f s", millis / 1000.0)
+
+    /**
+     * Let the user send the collected data as JSON, together with information about app and device.
+     */
+    private fun exportDiagnostics() {
+        val report = buildJsonObject {
+            put("appVersion", BuildConfig.VERSION_NAME)
+            put("sdk", Build.VERSION.SDK_INT)
+            put("device", "${Build.MANUFACTURER} ${Build.MODEL}")
+            put("storage", StorageStats.toJsonElement(StorageStats.getCounters(requireContext())))
+            put("alarms", AlarmStats.toJsonElement(AlarmStats.getDeliveryLog(requireContext())))
+        }
+        val intent = Intent(Intent.ACTION_SEND)
+            .setType("text/plain")
+            .putExtra(Intent.EXTRA_SUBJECT, getString(R.string.diagnostics_export_subject))
+            .putExtra(Intent.EXTRA_TEXT, report.toString())
+        startActivity(Intent.createChooser(intent, getString(R.string.preference_diagnostics_export)))
+    }
+}
@@ -77,6 +77,7 @@ class EditReminderDialogActivity : ReminderDialogActivity() {
             if (reminder.isNagging) {
                 naggingRepeatInterval = reminder.naggingRepeatInterval
             }
+            recurrence = reminder.recurrence
             reminderToUpdate = reminderId
         } catch (e: ReminderNotFoundException) {
             Log.w("AddReminder", "Intent contains invalid reminder ID.")
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder.ui
+
+import android.app.AlarmManager
+import android.app.PendingIntent
+import android.appwidget.AppWidgetManager
+import android.appwidget.AppWidgetProvider
+import android.content.ComponentName
+import android.content.Context
+import android.content.Intent
+import android.os.Build
+import android.text.format.DateFormat
+import android.text.format.DateUtils
+import android.view.View
+import android.widget.RemoteViews
+import androidx.core.content.ContextCompat
+import felixwiemuth.simplereminder.AppInitializer
+import felixwiemuth.simplereminder.R
+import felixwiemuth.simplereminder.ReminderStorage
+import felixwiemuth.simplereminder.StorageStats
+import felixwiemuth.simplereminder.data.NextReminders
+import felixwiemuth.simplereminder.data.Reminder
+import felixwiemuth.simplereminder.ui.reminderslist.RemindersListActivity
+import felixwiemuth.simplereminder.util.BackgroundExecutor
+import felixwiemuth.simplereminder.util.DateTimeUtil
+
+/**
+ * Home screen widget showing the due and next scheduled reminders. It only reads the [NextReminders] snapshot, which
+ * is kept up to date by [ReminderStorage], and is updated by it whenever the snapshot changes. Otherwise, the widget
+ * is only refreshed when its presentation changes with time (see [NextReminders.nextBoundary]), not periodically.
+ */
+class NextRemindersWidgetProvider : AppWidgetProvider() {
+
+    override fun onReceive(context: Context, intent: Intent) {
+        if (intent.action == ACTION_REFRESH) {
+            val appWidgetManager = AppWidgetManager.getInstance(context)
+            onUpdate(context, appWidgetManager, getAppWidgetIds(context, appWidgetManager))
+        } else {
+            super.onReceive(context, intent)
+        }
+    }
+
+    override fun onUpdate(context: Context, appWidgetManager: AppWidgetManager, appWidgetIds: IntArray) {
+        AppInitializer.initialize(context, AppInitializer.Component.WIDGET)
+        val appContext = context.applicationContext
+        val pendingResult = goAsync()
+        // Building the snapshot for the first time requires loading all reminders
+        BackgroundExecutor.execute {
+            try {
+                update(appContext, appWidgetManager, appWidgetIds, ReminderStorage.getNextReminders(appContext))
+            } finally {
+                StorageStats.persistAndFinish(appContext, pendingResult)
+            }
+        }
+    }
+
+    override fun onDisabled(context: Context) {
+        val alarmManager = context.getSystemService(Context.ALARM_SERVICE) as AlarmManager
+        alarmManager.cancel(makeRefreshPendingIntent(context))
+    }
+
+    companion object {
+        private const val ACTION_REFRESH = "felixwiemuth.simplereminder.action.REFRESH_WIDGET"
+
+        /**
+         * Same as the time format of [DateTimeUtil].
+         */
+        private const val TIME_FORMAT = "HH:mm"
+
+        private val ROW_IDS = intArrayOf(
+            R.id.widget_reminder_0,
+            R.id.widget_reminder_1,
+            R.id.widget_reminder_2,
+            R.id.widget_reminder_3,
+            R.id.widget_reminder_4
+        )
+
+        /**
+         * Show the given snapshot on all widgets, if there are any.
+         */
+        fun updateWidgets(context: Context, nextReminders: NextReminders) {
+            val appWidgetManager = AppWidgetManager.getInstance(context) ?: return
+            val appWidgetIds = getAppWidgetIds(context, appWidgetManager)
+            if (appWidgetIds.isNotEmpty()) {
+                update(context, appWidgetManager, appWidgetIds, nextReminders)
+            }
+        }
+
+        private fun getAppWidgetIds(context: Context, appWidgetManager: AppWidgetManager): IntArray =
+            appWidgetManager.getAppWidgetIds(ComponentName(context, NextRemindersWidgetProvider::class.java))
+
+        private fun update(
+            context: Context,
+            appWidgetManager: AppWidgetManager,
+            appWidgetIds: IntArray,
+            nextReminders: NextReminders
+        ) {
+            val now = System.currentTimeMillis()
+            val views = RemoteViews(context.packageName, R.layout.widget_next_reminders)
+            val reminders = nextReminders.due + nextReminders.upcoming
+            for ((i, rowId) in ROW_IDS.withIndex()) {
+                val reminder = reminders.getOrNull(i)
+                if (reminder == null) {
+                    views.setViewVisibility(rowId, View.GONE)
+                } else {
+                    views.setViewVisibility(rowId, View.VISIBLE)
+                    views.setTextViewText(rowId, formatRow(context, reminder, now))
+                    views.setTextColor(
+                        rowId,
+                        ContextCompat.getColor(
+                            context,
+                            if (reminder.status == Reminder.Status.NOTIFIED || reminder.time <= now) R.color.text_alert else R.color.widget_text
+                        )
+                    )
+                }
+            }
+            views.setViewVisibility(R.id.widget_empty, if (reminders.isEmpty()) View.VISIBLE else View.GONE)
+            views.setOnClickPendingIntent(
+                R.id.widget_root,
+                PendingIntent.getActivity(
+                    context,
+                    0,
+                    Intent(context, RemindersListActivity::class.java),
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) PendingIntent.FLAG_IMMUTABLE else 0
+                )
+            )
+            appWidgetManager.updateAppWidget(appWidgetIds, views)
+            scheduleRefresh(context, nextReminders.nextBoundary(now))
+        }
+
+        /**
+         * Format a row of the widget. As widgets are updated from background threads, this does not use the shared
+         * formats of [DateTimeUtil], which are not thread-safe, but only the static formatting methods of the platform.
+         */
+        private fun formatRow(context: Context, reminder: Reminder, now: Long): String {
+            val timeOfDay = DateFormat.format(TIME_FORMAT, reminder.time)
+            val time = if (DateUtils.isToday(reminder.time) || reminder.time <= now) {
+                timeOfDay
+            } else {
+                DateTimeUtil.formatDateWithDayOfWeek(context, reminder.time) + " " + timeOfDay
+            }
+            return context.getString(R.string.widget_reminder_row, time, reminder.text)
+        }
+
+        /**
+         * Set a (non-waking) alarm to refresh the widgets at the given time, replacing the previous one.
+         */
+        private fun scheduleRefresh(context: Context, time: Long) {
+            val alarmManager = context.getSystemService(Context.ALARM_SERVICE) as AlarmManager
+            alarmManager.set(AlarmManager.RTC, time, makeRefreshPendingIntent(context))
+        }
+
+        private fun makeRefreshPendingIntent(context: Context): PendingIntent =
+            PendingIntent.getBroadcast(
+                context,
+                0,
+                Intent(ACTION_REFRESH).setClass(context, NextRemindersWidgetProvider::class.java),
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                    PendingIntent.FLAG_UPDATE_CURRENT or PendingIntent.FLAG_IMMUTABLE
+                } else {
+                    PendingIntent.FLAG_UPDATE_CURRENT
+                }
+            )
+    }
+}
@@ -18,6 +18,7 @@ package felixwiemuth.simplereminder.ui
 
 import android.app.Activity
 import android.app.DatePickerDialog
+import android.content.Context
 import android.content.DialogInterface
 import android.content.res.Resources
 import android.os.Build
@@ -48,10 +49,15 @@ import androidx.appcompat.app.AlertDialog
 import androidx.appcompat.app.AppCompatActivity
 import androidx.appcompat.widget.SwitchCompat
 import androidx.core.view.children
+import felixwiemuth.simplereminder.AppInitializer
 import felixwiemuth.simplereminder.Prefs
 import felixwiemuth.simplereminder.R
+import felixwiemuth.simplereminder.TextHistory
+import felixwiemuth.simplereminder.data.Recurrence
 import felixwiemuth.simplereminder.data.Reminder
 import felixwiemuth.simplereminder.data.Reminder.Companion.builder
+import felixwiemuth.simplereminder.ui.util.TextHistoryAdapter
+import felixwiemuth.simplereminder.util.BackgroundExecutor
 import felixwiemuth.simplereminder.util.DateTimeUtil
 import felixwiemuth.simplereminder.util.setOneTimeClickListener
 import java.util.Calendar
@@ -81,6 +87,15 @@ abstract class ReminderDialogActivity : AppCompatActivity() {
     @JvmField
     protected var naggingRepeatInterval = 0
 
+    /**
+     * The rule by which the reminder should repeat, or null if it should not repeat.
+     */
+    protected var recurrence: Recurrence? = null
+        set(value) {
+            field = value
+            renderSelectedDate()
+        }
+
     private enum class DateSelectionMode {
         /**
          * The date is derived from the chosen time, so that this time lies within the next 24 hours.
@@ -95,6 +110,7 @@ abstract class ReminderDialogActivity : AppCompatActivity() {
 
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
+        AppInitializer.initialize(this, AppInitializer.Component.UI)
         setContentView(R.layout.activity_reminder_dialog)
 
         // Note: This adds a warning in logcat "OnBackInvokedCallback is not enabled for the application",
@@ -117,6 +133,10 @@ abstract class ReminderDialogActivity : AppCompatActivity() {
                 selectedDate[Calendar.DAY_OF_MONTH]
             ).show()
         }
+        dateDisplay.setOnLongClickListener {
+            showChooseRecurrenceDialog()
+            true
+        }
         naggingSwitch = findViewById(R.id.naggingSwitch)
         naggingSwitch.setOnClickListener {
             if (naggingSwitch.isChecked) {
@@ -188,6 +208,16 @@ abstract class ReminderDialogActivity : AppCompatActivity() {
         addButton.setOneTimeClickListener { onDone() }
         naggingRepeatInterval = Prefs.getNaggingRepeatInterval(this)
         renderSelectedDate()
+
+        // Build the text history index while the user starts typing
+        val appContext = applicationContext
+        BackgroundExecutor.execute { TextHistory.prepare(appContext) }
+    }
+
+    override fun onPostCreate(savedInstanceState: Bundle?) {
+        super.onPostCreate(savedInstanceState)
+        // Set only now so that setting the initial text (by subclasses or when restoring state) does not show suggestions
+        nameTextView.setAdapter(TextHistoryAdapter(this))
     }
 
     /**
@@ -356,7 +386,11 @@ abstract class ReminderDialogActivity : AppCompatActivity() {
         } else {
             spDiff.setSpan(ForegroundColorSpan(resources.getColor(R.color.colorAccent)), 0, spDiff.length, 0)
         }
-        dateDisplay.text = SpannableStringBuilder().append(spBase).append(spDiff)
+        dateDisplay.text = SpannableStringBuilder().append(spBase).append(spDiff).apply {
+            if (recurrence != null) {
+                append(getString(R.string.add_reminder_recurring_indicator))
+            }
+        }
     }
 
     private fun showChooseNaggingRepeatIntervalDialog() {
@@ -380,6 +414,50 @@ abstract class ReminderDialogActivity : AppCompatActivity() {
             .show()
     }
 
+    /**
+     * Let the user choose whether and how the reminder repeats.
+     */
+    private fun showChooseRecurrenceDialog() {
+        val choices = arrayOf(
+            null,
+            Recurrence(Recurrence.Frequency.DAILY),
+            Recurrence(Recurrence.Frequency.WEEKDAYS),
+            Recurrence(Recurrence.Frequency.WEEKLY)
+        )
+        val names = resources.getStringArray(R.array.array_recurrence_names)
+        // The last entry lets the user choose a number of days
+        val checked = choices.indexOf(recurrence).let { if (it < 0) names.size - 1 else it }
+        AlertDialog.Builder(this)
+            .setTitle(R.string.dialog_choose_recurrence_title)
+            .setSingleChoiceItems(names, checked) { dialog: DialogInterface, which: Int ->
+                dialog.dismiss()
+                if (which < choices.size) {
+                    recurrence = choices[which]
+                } else {
+                    showChooseRecurrenceIntervalDialog()
+                }
+            }
+            .setNegativeButton(android.R.string.cancel, null)
+            .show()
+    }
+
+    private fun showChooseRecurrenceIntervalDialog() {
+        val dialogView = layoutInflater.inflate(R.layout.dialog_number_picker, null)
+        val intervalNumberPicker = dialogView.findViewById<NumberPicker>(R.id.numberPicker)
+        intervalNumberPicker.minValue = 1
+        intervalNumberPicker.maxValue = MAX_RECURRENCE_INTERVAL_DAYS
+        intervalNumberPicker.wrapSelectorWheel = false
+        intervalNumberPicker.value = recurrence?.takeIf { it.frequency == Recurrence.Frequency.DAILY }?.interval ?: 2
+        AlertDialog.Builder(this, R.style.dialog_narrow)
+            .setView(dialogView)
+            .setTitle(R.string.dialog_choose_recurrence_interval_title)
+            .setPositiveButton(android.R.string.ok) { _: DialogInterface?, _: Int ->
+                recurrence = Recurrence(Recurrence.Frequency.DAILY, intervalNumberPicker.value)
+            }
+            .setNegativeButton(android.R.string.cancel, null)
+            .show()
+    }
+
     private fun showToastNaggingRepeatInterval() {
         Toast.makeText(
             this@ReminderDialogActivity,
@@ -396,6 +474,7 @@ abstract class ReminderDialogActivity : AppCompatActivity() {
         if (naggingSwitch.isChecked) {
             reminderBuilder.naggingRepeatInterval = naggingRepeatInterval
         }
+        reminderBuilder.recurrence = recurrence
         return reminderBuilder
     }
 
@@ -407,36 +486,7 @@ abstract class ReminderDialogActivity : AppCompatActivity() {
      * Action to be executed on hitting the main "Add" or "OK" button.
      */
     protected abstract fun onDone()
-    protected fun makeToast(reminder: Reminder) {
-        // Create relative description of due date
-        val now = Calendar.getInstance()
-        val toastText: String
-        if (reminder.calendar.before(now)) { // This is a rare case / does not happen in a usual use case.
-            toastText = getString(R.string.add_reminder_toast_due_in_past)
-        } else {
-            val relativeDueDate: String
-            val durationUntilDue = DateTimeUtil.daysHoursMinutesBetween(now, reminder.calendar)
-            relativeDueDate = if (durationUntilDue.isZero) {
-                // This happens when the reminder is due in less than a minute, as the seconds were cut off.
-                getString(R.string.duration_less_than_a_minute)
-            } else {
-                // Note that the string cannot be empty when the duration is not zero with the chosen rounding (either their is at least one day, or at least one minute or hour).
-                durationUntilDue.toString(
-                    DateTimeUtil.Duration.Resolution.MINUTES_IF_0_DAYS,
-                    DateTimeUtil.Duration.RoundingMode.CLOSEST,
-                    this
-                )
-            }
-            toastText = if (reminder.isNagging) {
-                getString(R.string.add_reminder_toast_due_nagging, relativeDueDate)
-            } else {
-                getString(R.string.add_reminder_toast_due, relativeDueDate)
-            }
-        }
-        val duration = Toast.LENGTH_LONG
-        val toast = Toast.makeText(this, toastText, duration)
-        toast.show()
-    }
+    protected fun makeToast(reminder: Reminder) = showReminderAddedToast(this, reminder)
 
     /**
      * Finish the activity with RESULT_OK, removing the task on Lollipop and above.
@@ -554,4 +604,46 @@ abstract class ReminderDialogActivity : AppCompatActivity() {
             }
         }
     }
+
+    companion object {
+        /**
+         * Maximum number of days which can be chosen for a reminder repeating every few days.
+         */
+        private const val MAX_RECURRENCE_INTERVAL_DAYS = 365
+
+        /**
+         * Show a toast informing about when the given (just added) reminder is due.
+         */
+        @JvmStatic
+        fun showReminderAddedToast(context: Context, reminder: Reminder) {
+            // Create relative description of due date
+            val now = Calendar.getInstance()
+            val toastText: String
+            if (reminder.time < now.timeInMillis) { // This is a rare case / does not happen in a usual use case.
+                toastText = context.getString(R.string.add_reminder_toast_due_in_past)
+            } else {
+                val relativeDueDate: String
+                val durationUntilDue = DateTimeUtil.daysHoursMinutesBetween(now, reminder.calendar)
+                relativeDueDate = if (durationUntilDue.isZero) {
+                    // This happens when the reminder is due in less than a minute, as the seconds were cut off.
+                    context.getString(R.string.duration_less_than_a_minute)
+                } else {
+                    // Note that the string cannot be empty when the duration is not zero with the chosen rounding (either their is at least one day, or at least one minute or hour).
+                    durationUntilDue.toString(
+                        DateTimeUtil.Duration.Resolution.MINUTES_IF_0_DAYS,
+                        DateTimeUtil.Duration.RoundingMode.CLOSEST,
+                        context
+                    )
+                }
+                toastText = if (reminder.isNagging) {
+                    context.getString(R.string.add_reminder_toast_due_nagging, relativeDueDate)
+                } else {
+                    context.getString(R.string.add_reminder_toast_due, relativeDueDate)
+                }
+            }
+            val duration = Toast.LENGTH_LONG
+            val toast = Toast.makeText(context, toastText, duration)
+            toast.show()
+        }
+    }
 }
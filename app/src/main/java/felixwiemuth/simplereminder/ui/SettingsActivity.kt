@@ -18,11 +18,13 @@ package felixwiemuth.simplereminder.ui
 
 import android.os.Bundle
 import androidx.appcompat.app.AppCompatActivity
+import felixwiemuth.simplereminder.AppInitializer
 import felixwiemuth.simplereminder.R
 
 class SettingsActivity : AppCompatActivity() {
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
+        AppInitializer.initialize(this, AppInitializer.Component.UI)
         setContentView(R.layout.activity_settings)
         supportFragmentManager
             .beginTransaction()
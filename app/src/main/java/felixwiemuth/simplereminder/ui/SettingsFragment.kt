@@ -21,13 +21,20 @@ import android.content.Context
 import android.content.Intent
 import android.content.SharedPreferences
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener
+import android.net.Uri
 import android.os.Build
 import android.os.Bundle
+import android.os.Handler
+import android.os.Looper
 import android.provider.Settings
 import android.text.InputType
 import android.widget.EditText
+import android.widget.ProgressBar
 import android.widget.Toast
+import androidx.activity.result.contract.ActivityResultContracts
 import androidx.annotation.RequiresApi
+import androidx.annotation.StringRes
+import androidx.appcompat.app.AlertDialog
 import androidx.preference.EditTextPreference
 import androidx.preference.Preference
 import androidx.preference.Preference.SummaryProvider
@@ -38,10 +45,37 @@ import felixwiemuth.simplereminder.BootReceiver
 import felixwiemuth.simplereminder.Prefs
 import felixwiemuth.simplereminder.R
 import felixwiemuth.simplereminder.ReminderManager
+import felixwiemuth.simplereminder.ReminderTransfer
+import felixwiemuth.simplereminder.data.ReminderNdjson
 import felixwiemuth.simplereminder.ui.util.UIUtils
+import felixwiemuth.simplereminder.util.BackgroundExecutor
 import felixwiemuth.simplereminder.util.DateTimeUtil
+import java.io.IOException
 
 class SettingsFragment : PreferenceFragmentCompat(), OnSharedPreferenceChangeListener {
+    private val exportRemindersLauncher =
+        registerForActivityResult(ActivityResultContracts.CreateDocument(ReminderNdjson.MIME_TYPE)) { uri: Uri? ->
+            uri?.let {
+                runTransfer(R.string.preference_export_reminders, R.string.toast_export_reminders_done, R.string.toast_export_reminders_failed) { context, listener ->
+                    ReminderTransfer.export(context, it, listener)
+                }
+            }
+        }
+
+    private val importRemindersLauncher =
+        registerForActivityResult(ActivityResultContracts.OpenDocument()) { uri: Uri? ->
+            uri?.let {
+                runTransfer(R.string.preference_import_reminders, R.string.toast_import_reminders_done, R.string.toast_import_reminders_failed) { context, listener ->
+                    ReminderTransfer.import(context, it, listener)
+                }
+            }
+        }
+
+    /**
+     * The dialog showing the progress of the running export or import, while the view exists.
+     */
+    private var transferDialog: AlertDialog? = null
+
     override fun onCreatePreferences(savedInstanceState: Bundle?, rootKey: String?) {
         setPreferencesFromResource(R.xml.preferences, rootKey)
 
@@ -81,6 +115,34 @@ class SettingsFragment : PreferenceFragmentCompat(), OnSharedPreferenceChangeLis
                 }
         }
 
+        findPreference<EditTextPreference>(getString(R.string.prefkey_snooze_durations))?.apply {
+            summaryProvider = SummaryProvider { _: Preference? ->
+                Prefs.getSnoozeDurations(context).map { ReminderManager.formatSnoozeDuration(context, it) }
+                    .ifEmpty { listOf(getString(R.string.preference_snooze_durations_none)) }
+                    .joinToString(", ")
+            }
+            // Validation
+            onPreferenceChangeListener =
+                Preference.OnPreferenceChangeListener listener@{ _: Preference?, newValue: Any ->
+                    try {
+                        Prefs.parseSnoozeDurations(newValue.toString())
+                        return@listener true
+                    } catch (ex: IllegalArgumentException) {
+                        // Incorrect format, handled below
+                    }
+                    Toast.makeText(
+                        context,
+                        getString(
+                            R.string.preference_snooze_durations_format_error,
+                            Prefs.MAX_SNOOZE_DURATIONS,
+                            Prefs.MAX_SNOOZE_DURATION_MINUTES
+                        ),
+                        Toast.LENGTH_LONG
+                    ).show()
+                    false
+                }
+        }
+
         // Reminder dialog customizations only apply for Android >= 5.0
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
             findPreference<PreferenceCategory>(getString(R.string.prefkey_cat_ui))?.apply {
@@ -113,6 +175,87 @@ class SettingsFragment : PreferenceFragmentCompat(), OnSharedPreferenceChangeLis
                 Toast.makeText(context, R.string.toast_reset_dont_show_again, Toast.LENGTH_LONG).show()
                 true
             }
+
+        // Export and import use the Storage Access Framework, which is available from Android 4.4
+        val exportPreference = findPreference<Preference>(getString(R.string.prefkey_export_reminders))!!
+        val importPreference = findPreference<Preference>(getString(R.string.prefkey_import_reminders))!!
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            exportPreference.onPreferenceClickListener = Preference.OnPreferenceClickListener {
+                exportRemindersLauncher.launch(getString(R.string.export_reminders_file_name))
+                true
+            }
+            importPreference.onPreferenceClickListener = Preference.OnPreferenceClickListener {
+                // Other apps may not know the type of NDJSON files
+                importRemindersLauncher.launch(arrayOf(ReminderNdjson.MIME_TYPE, "application/octet-stream", "application/json", "text/*"))
+                true
+            }
+        } else {
+            exportPreference.parent?.removePreference(exportPreference)
+            importPreference.parent?.removePreference(importPreference)
+        }
+    }
+
+    /**
+     * Run the given export or import in the background while showing its progress, then show the result in a toast.
+     */
+    private fun runTransfer(
+        @StringRes title: Int,
+        @StringRes doneMessage: Int,
+        @StringRes failedMessage: Int,
+        transfer: (Context, ReminderTransfer.ProgressListener) -> Int
+    ) {
+        val context = requireContext().applicationContext
+        val progressBar = ProgressBar(requireContext(), null, android.R.attr.progressBarStyleHorizontal).apply {
+            isIndeterminate = true
+            max = PROGRESS_MAX
+        }
+        val dialog = AlertDialog.Builder(requireContext())
+            .setTitle(title)
+            .setMessage(getString(R.string.dialog_transfer_progress, 0))
+            .setView(progressBar)
+            .setCancelable(false)
+            .show()
+        transferDialog = dialog
+        val handler = Handler(Looper.getMainLooper())
+        BackgroundExecutor.execute {
+            var processed = 0
+            val message = try {
+                val count = transfer(context) { reminders, fraction ->
+                    processed = reminders
+                    handler.post {
+                        if (transferDialog !== dialog) {
+                            return@post
+                        }
+                        dialog.setMessage(context.getString(R.string.dialog_transfer_progress, reminders))
+                        if (fraction >= 0) {
+                            progressBar.isIndeterminate = false
+                            progressBar.progress = (fraction * PROGRESS_MAX).toInt()
+                        }
+                    }
+                }
+                context.getString(doneMessage, count)
+            } catch (e: ReminderNdjson.FormatException) {
+                context.getString(R.string.toast_import_reminders_invalid_line, e.line, processed)
+            } catch (e: IOException) {
+                context.getString(failedMessage, e.message)
+            } catch (e: SecurityException) { // Access to the document was revoked
+                context.getString(failedMessage, e.message)
+            }
+            handler.post {
+                if (transferDialog === dialog) {
+                    dialog.dismiss()
+                    transferDialog = null
+                }
+                Toast.makeText(context, message, Toast.LENGTH_LONG).show()
+            }
+        }
+    }
+
+    override fun onDestroyView() {
+        // The transfer continues, but its progress is no longer shown
+        transferDialog?.dismiss()
+        transferDialog = null
+        super.onDestroyView()
     }
 
     override fun onResume() {
@@ -201,4 +344,11 @@ class SettingsFragment : PreferenceFragmentCompat(), OnSharedPreferenceChangeLis
                     }
             }
     }
-}
\ No newline at end of file
+
+    companion object {
+        /**
+         * Resolution of the progress bar for export and import.
+         */
+        private const val PROGRESS_MAX = 1000
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder.ui
+
+import android.app.Activity
+import android.content.Context
+import android.content.Intent
+import android.os.Bundle
+import android.widget.Toast
+import androidx.core.content.pm.ShortcutInfoCompat
+import androidx.core.content.pm.ShortcutManagerCompat
+import androidx.core.graphics.drawable.IconCompat
+import felixwiemuth.simplereminder.AppInitializer
+import felixwiemuth.simplereminder.R
+import felixwiemuth.simplereminder.ReminderManager
+import felixwiemuth.simplereminder.TemplateStorage
+import felixwiemuth.simplereminder.data.Template
+
+/**
+ * Creates a reminder from the template given in the intent without showing a UI. Used by the template shortcuts.
+ */
+class TemplateReminderActivity : Activity() {
+    override fun onCreate(savedInstanceState: Bundle?) {
+        super.onCreate(savedInstanceState)
+        AppInitializer.initialize(this, AppInitializer.Component.UI)
+        val template = TemplateStorage.getTemplate(this, intent.getIntExtra(EXTRA_TEMPLATE_ID, -1))
+        if (template == null) {
+            Toast.makeText(this, R.string.toast_template_not_found, Toast.LENGTH_LONG).show()
+        } else {
+            addReminderFromTemplate(this, template)
+        }
+        finish()
+    }
+
+    companion object {
+        private const val EXTRA_TEMPLATE_ID = "felixwiemuth.simplereminder.ui.TemplateReminderActivity.extra.TEMPLATE_ID"
+
+        /**
+         * Maximum number of template shortcuts (launchers usually show only four shortcuts).
+         */
+        private const val MAX_SHORTCUTS = 4
+
+        /**
+         * Add a reminder from the given template, due [Template.delay] minutes from now, and inform the user.
+         */
+        @JvmStatic
+        fun addReminderFromTemplate(context: Context, template: Template) {
+            val reminder = ReminderManager.addReminder(context, template.toReminderBuilder(System.currentTimeMillis()))
+            ReminderDialogActivity.showReminderAddedToast(context, reminder)
+        }
+
+        /**
+         * Publish the first of the given templates as dynamic shortcuts of the app (only has an effect from Android 7.1 on).
+         */
+        @JvmStatic
+        fun updateShortcuts(context: Context, templates: List<Template>) {
+            val limit = minOf(MAX_SHORTCUTS, ShortcutManagerCompat.getMaxShortcutCountPerActivity(context))
+            val shortcuts = templates.take(limit).map { template ->
+                ShortcutInfoCompat.Builder(context, "template_${template.id}")
+                    .setShortLabel(template.text.ifEmpty { context.getString(R.string.template_without_text) })
+                    .setIcon(IconCompat.createWithResource(context, R.mipmap.ic_launcher))
+                    .setIntent(
+                        Intent(Intent.ACTION_VIEW)
+                            .setClass(context, TemplateReminderActivity::class.java)
+                            .putExtra(EXTRA_TEMPLATE_ID, template.id)
+                    )
+                    .build()
+            }
+            ShortcutManagerCompat.setDynamicShortcuts(context, shortcuts)
+        }
+    }
+}
@@ -16,13 +16,10 @@
  */
 package felixwiemuth.simplereminder.ui.reminderslist
 
-import android.content.Context
 import android.view.View
 import android.widget.TextView
 import androidx.cardview.widget.CardView
 import felixwiemuth.simplereminder.R
-import felixwiemuth.simplereminder.util.DateTimeUtil
-import java.util.*
 
 /**
  * View holder for items where time and date is to be shown.
@@ -30,7 +27,7 @@ import java.util.*
 class FullDateReminderViewHolder(itemView: View) :
     ReminderViewHolder(R.layout.reminder_card_datefield_full_date, (itemView as CardView)) {
     private val dateView: TextView = itemView.findViewById(R.id.date)
-    override fun initializeDateView(date: Date, context: Context) {
-        dateView.text = DateTimeUtil.formatDate(context, date)
+    override fun bindDate(date: String?) {
+        dateView.text = date
     }
 }
\ No newline at end of file
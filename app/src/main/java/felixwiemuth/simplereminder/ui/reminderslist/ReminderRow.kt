@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder.ui.reminderslist
+
+import android.content.Context
+import androidx.annotation.ColorInt
+import androidx.annotation.LayoutRes
+import androidx.core.content.ContextCompat
+import felixwiemuth.simplereminder.R
+import felixwiemuth.simplereminder.data.Reminder
+import felixwiemuth.simplereminder.util.DateTimeUtil
+
+/**
+ * How a reminder is displayed as an item of a reminders list. Rows are created when the sections of the list are
+ * built, with all values already formatted, so that binding a [ReminderViewHolder] only sets them.
+ */
+data class ReminderRow(
+    val reminder: Reminder,
+    /**
+     * The status the item has for selection, which for an upcoming occurrence of a recurring reminder is the status of
+     * the stored reminder.
+     */
+    val status: Reminder.Status,
+    /**
+     * Stable ID of the item.
+     */
+    val itemId: Long,
+    /**
+     * The resource id of the layout for the date field, used as view type (see [ReminderViewHolder]).
+     */
+    @LayoutRes val viewType: Int,
+    val text: String,
+    val time: String,
+    /**
+     * The formatted date, or null if only the time is shown.
+     */
+    val date: String?,
+    @ColorInt val dateColor: Int
+) {
+    /**
+     * Creates rows, formatting their values with the resources of the given context.
+     */
+    class Factory(private val context: Context) {
+        /**
+         * Date field colors by status (indexed by ordinal).
+         */
+        private val dateColors = Reminder.Status.values().map {
+            ContextCompat.getColor(
+                context, when (it) {
+                    Reminder.Status.SCHEDULED -> R.color.bg_date_scheduled
+                    Reminder.Status.NOTIFIED -> R.color.bg_date_notified
+                    Reminder.Status.DONE -> R.color.bg_date_done
+                }
+            )
+        }
+
+        fun create(reminder: Reminder, status: Reminder.Status, itemId: Long, displayType: DisplayType): ReminderRow {
+            val showDate = when (displayType) {
+                DisplayType.TIME_ONLY -> false
+                DisplayType.FULL -> true
+                DisplayType.TIME_ONLY_IF_TODAY -> !DateTimeUtil.isToday(reminder.time)
+            }
+            return ReminderRow(
+                reminder,
+                status,
+                itemId,
+                if (showDate) R.layout.reminder_card_datefield_full_date else R.layout.reminder_card_datefield_time_only,
+                if (reminder.isRecurring) {
+                    context.getString(R.string.reminder_recurring_text, reminder.text)
+                } else {
+                    reminder.text
+                },
+                DateTimeUtil.formatTime(reminder.time),
+                if (showDate) DateTimeUtil.formatDate(context, reminder.time) else null,
+                dateColors[reminder.status.ordinal]
+            )
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder.ui.reminderslist
+
+import felixwiemuth.simplereminder.data.Reminder
+import java.util.*
+
+/**
+ * A selection of reminders (by ID) which also counts the selected reminders per [Reminder.Status].
+ * Membership is kept in a bit set indexed by ID / 2 (reminder IDs are even), so that all operations except
+ * [selectAll], [ids] and [retainOnly] take constant time.
+ *
+ * The status given when adding or removing a reminder must be the status of the reminder as known to the caller
+ * when it was added, so that the counts stay consistent.
+ */
+class ReminderSelection {
+    /**
+     * The selected reminders.
+     */
+    private val bits = BitSet()
+    private val countByStatus = IntArray(Reminder.Status.values().size)
+
+    var size = 0
+        private set
+
+    fun isEmpty(): Boolean = size == 0
+
+    operator fun contains(id: Int): Boolean = bits[id / 2]
+
+    /**
+     * Number of selected reminders with the given status.
+     */
+    fun count(status: Reminder.Status): Int = countByStatus[status.ordinal]
+
+    /**
+     * Add the reminder with the given ID and status.
+     *
+     * @return whether the reminder was not selected before
+     */
+    fun add(id: Int, status: Reminder.Status): Boolean {
+        if (contains(id)) {
+            return false
+        }
+        bits.set(id / 2)
+        countByStatus[status.ordinal]++
+        size++
+        return true
+    }
+
+    /**
+     * Remove the reminder with the given ID and status.
+     *
+     * @return whether the reminder was selected before
+     */
+    fun remove(id: Int, status: Reminder.Status): Boolean {
+        if (!contains(id)) {
+            return false
+        }
+        bits.clear(id / 2)
+        countByStatus[status.ordinal]--
+        size--
+        return true
+    }
+
+    /**
+     * Select all reminders. Reminders added later (with other IDs) are not selected.
+     *
+     * @param ids the IDs of all reminders
+     * @param countByStatus the number of reminders per status (indexed by ordinal)
+     */
+    fun selectAll(ids: IntArray, countByStatus: IntArray) {
+        bits.clear()
+        for (id in ids) {
+            bits.set(id / 2)
+        }
+        countByStatus.copyInto(this.countByStatus)
+        size = ids.size
+    }
+
+    fun clear() {
+        bits.clear()
+        countByStatus.fill(0)
+        size = 0
+    }
+
+    /**
+     * Get the IDs of the selected reminders.
+     */
+    fun ids(): Set<Int> {
+        val result = HashSet<Int>(size * 2)
+        var i = bits.nextSetBit(0)
+        while (i >= 0) {
+            result.add(i * 2)
+            i = bits.nextSetBit(i + 1)
+        }
+        return result
+    }
+
+    /**
+     * Keep only the selected reminders which are contained in the given list and recount them using their current
+     * status.
+     */
+    fun retainOnly(reminders: Iterable<Reminder>) {
+        val retained = BitSet()
+        countByStatus.fill(0)
+        size = 0
+        for (reminder in reminders) {
+            if (contains(reminder.id)) {
+                retained.set(reminder.id / 2)
+                countByStatus[reminder.status.ordinal]++
+                size++
+            }
+        }
+        bits.clear()
+        bits.or(retained)
+    }
+}
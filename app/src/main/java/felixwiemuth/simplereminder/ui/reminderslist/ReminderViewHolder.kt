@@ -26,7 +26,6 @@ import androidx.cardview.widget.CardView
 import androidx.core.content.ContextCompat
 import androidx.recyclerview.widget.RecyclerView
 import felixwiemuth.simplereminder.R
-import java.util.*
 
 /**
  * A base item view holder for reminders lists.
@@ -39,6 +38,13 @@ open class ReminderViewHolder(@LayoutRes datefieldRes: Int, itemView: CardView)
     val datefieldView: View
     val timeView: TextView
 
+    /**
+     * The row last bound to this view holder (see [bind]), or null if not bound yet. Listeners set when creating the
+     * view holder act on it, as the view holder may be bound to different rows (also of different adapters).
+     */
+    var row: ReminderRow? = null
+        private set
+
     init {
         val datefieldViewStub = itemView.findViewById<ViewStub>(R.id.datefield_stub)
         datefieldViewStub.layoutResource = datefieldRes
@@ -62,7 +68,18 @@ open class ReminderViewHolder(@LayoutRes datefieldRes: Int, itemView: CardView)
 
 
     /**
-     * If the view holder has a date view, this method should initialize it with the given parameters.
+     * Show the given row, except its selection state.
+     */
+    fun bind(row: ReminderRow) {
+        this.row = row
+        descriptionView.text = row.text
+        timeView.text = row.time
+        datefieldView.setBackgroundColor(row.dateColor)
+        bindDate(row.date)
+    }
+
+    /**
+     * If the view holder has a date view, this method should show the given formatted date in it.
      */
-    open fun initializeDateView(date: Date, context: Context) = Unit
+    protected open fun bindDate(date: String?) = Unit
 }
\ No newline at end of file
@@ -30,6 +30,7 @@ import android.widget.Toast
 import androidx.annotation.RequiresApi
 import androidx.appcompat.app.AlertDialog
 import androidx.appcompat.app.AppCompatActivity
+import androidx.appcompat.widget.SearchView
 import androidx.appcompat.widget.Toolbar
 import androidx.fragment.app.Fragment
 import androidx.viewpager2.adapter.FragmentStateAdapter
@@ -38,11 +39,13 @@ import com.google.android.material.floatingactionbutton.FloatingActionButton
 import com.google.android.material.tabs.TabLayout
 import com.google.android.material.tabs.TabLayoutMediator
 import de.cketti.library.changelog.ChangeLog
+import felixwiemuth.simplereminder.AppInitializer
 import felixwiemuth.simplereminder.BootReceiver
 import felixwiemuth.simplereminder.BuildConfig
 import felixwiemuth.simplereminder.Main
 import felixwiemuth.simplereminder.Prefs
 import felixwiemuth.simplereminder.R
+import felixwiemuth.simplereminder.ReminderSearch
 import felixwiemuth.simplereminder.ui.AddReminderDialogActivity
 import felixwiemuth.simplereminder.ui.SettingsActivity
 import felixwiemuth.simplereminder.ui.actions.DisplayChangeLog
@@ -50,6 +53,7 @@ import felixwiemuth.simplereminder.ui.actions.DisplayWelcomeMessage
 import felixwiemuth.simplereminder.ui.actions.DisplayWelcomeMessageUpdate
 import felixwiemuth.simplereminder.ui.util.HtmlDialogFragment
 import felixwiemuth.simplereminder.ui.util.UIUtils
+import felixwiemuth.simplereminder.util.BackgroundExecutor
 import felixwiemuth.simplereminder.util.ImplementationError
 
 class RemindersListActivity : AppCompatActivity() {
@@ -59,6 +63,7 @@ class RemindersListActivity : AppCompatActivity() {
     private lateinit var toolbar: Toolbar
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
+        AppInitializer.initialize(this, AppInitializer.Component.UI)
         setContentView(R.layout.activity_reminders_list)
         toolbar = findViewById(R.id.toolbar)
         setSupportActionBar(toolbar)
@@ -136,9 +141,46 @@ class RemindersListActivity : AppCompatActivity() {
     override fun onCreateOptionsMenu(menu: Menu): Boolean {
         // Inflate the menu; this adds items to the action bar if it is present.
         menuInflater.inflate(R.menu.menu_reminders_list, menu)
+        setupSearch(menu.findItem(R.id.action_search))
         return true
     }
 
+    /**
+     * Let the search action filter the reminders list while the search view is expanded.
+     */
+    private fun setupSearch(searchItem: MenuItem) {
+        val searchView = searchItem.actionView as SearchView
+        searchView.queryHint = getString(R.string.search_hint)
+        searchView.setOnQueryTextListener(object : SearchView.OnQueryTextListener {
+            override fun onQueryTextSubmit(query: String): Boolean {
+                searchView.clearFocus() // Hide the keyboard, the results are already shown
+                return true
+            }
+
+            override fun onQueryTextChange(newText: String): Boolean {
+                remindersListFragment?.setSearchQuery(newText)
+                return true
+            }
+        })
+        searchItem.setOnActionExpandListener(object : MenuItem.OnActionExpandListener {
+            override fun onMenuItemActionExpand(item: MenuItem): Boolean {
+                viewPager.currentItem = 0 // Results are shown in the reminders list
+                // Build the search index while the user starts typing
+                val appContext = applicationContext
+                BackgroundExecutor.execute { ReminderSearch.prepare(appContext) }
+                return true
+            }
+
+            override fun onMenuItemActionCollapse(item: MenuItem): Boolean {
+                remindersListFragment?.setSearchQuery(null)
+                return true
+            }
+        })
+    }
+
+    private val remindersListFragment: RemindersListFragment?
+        get() = supportFragmentManager.fragments.firstNotNullOfOrNull { it as? RemindersListFragment }
+
     override fun onOptionsItemSelected(item: MenuItem): Boolean {
         when (item.itemId) {
             R.id.action_settings -> {
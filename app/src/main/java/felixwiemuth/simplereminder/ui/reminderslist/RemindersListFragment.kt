@@ -20,6 +20,8 @@ import android.app.Activity
 import android.content.*
 import android.os.Build
 import android.os.Bundle
+import android.os.Handler
+import android.os.Looper
 import android.text.format.DateUtils
 import android.util.SparseArray
 import android.view.*
@@ -29,8 +31,6 @@ import androidx.appcompat.app.AppCompatActivity
 import androidx.appcompat.view.ActionMode
 import androidx.arch.core.util.Function
 import androidx.cardview.widget.CardView
-import androidx.core.content.ContextCompat
-import androidx.core.util.valueIterator
 import androidx.fragment.app.Fragment
 import androidx.localbroadcastmanager.content.LocalBroadcastManager
 import androidx.recyclerview.widget.ConcatAdapter
@@ -38,10 +38,14 @@ import androidx.recyclerview.widget.RecyclerView
 import felixwiemuth.simplereminder.Prefs
 import felixwiemuth.simplereminder.R
 import felixwiemuth.simplereminder.ReminderManager
+import felixwiemuth.simplereminder.ReminderSearch
 import felixwiemuth.simplereminder.ReminderStorage
+import felixwiemuth.simplereminder.TemplateStorage
 import felixwiemuth.simplereminder.data.Reminder
+import felixwiemuth.simplereminder.data.Template
 import felixwiemuth.simplereminder.ui.EditReminderDialogActivity
 import felixwiemuth.simplereminder.ui.reminderslist.RemindersListFragment.Companion.BROADCAST_REMINDERS_UPDATED
+import felixwiemuth.simplereminder.util.BackgroundExecutor
 import felixwiemuth.simplereminder.util.DateTimeUtil
 import felixwiemuth.simplereminder.util.ImplementationError
 import java.util.*
@@ -49,32 +53,98 @@ import java.util.*
 /**
  * A fragment displaying a list of reminders. May only be used in an [AppCompatActivity] with a toolbar. Displays reminders in sections:
  * - A "Due" section: SCHEDULED and NOTIFIED reminders which are due according to the current time, sorted descending by date)
- * - One section for each of the next [maxDaySections] days (including today) for the reminders scheduled for those days, each sorted ascending by date
+ * - One section for each of the next [maxDaySections] days (including today) for the reminders scheduled for those days, each sorted ascending by date,
+ *   also showing the upcoming occurrences of recurring reminders on those days
  * - A "Future" section for the remaining scheduled reminders, sorted ascending by date
- * - A "Done" section for reminders with status DONE, sorted descending by date
+ * - A "Done" section for reminders with status DONE, sorted descending by date, of which only a window around the
+ *   scroll position is loaded (see [PagedDoneRemindersAdapter])
  *
- * The list of reminders is updated whenever a [BROADCAST_REMINDERS_UPDATED] broadcast is received.
+ * While a search query is set (see [setSearchQuery]), only the matching reminders are shown instead, in one section.
+ *
+ * The list of reminders is updated when a [BROADCAST_REMINDERS_UPDATED] broadcast is received, where broadcasts received
+ * within [RELOAD_COALESCING_DELAY] milliseconds result in only one reload.
  */
 class RemindersListFragment : Fragment() {
     private lateinit var broadcastReceiver: BroadcastReceiver
 
+    private val reloadHandler = Handler(Looper.getMainLooper())
+    private val reloadRunnable = Runnable {
+        reloadPending = false
+        reloadRemindersListAndUpdateRecyclerView()
+    }
+
+    /**
+     * Whether [reloadRunnable] is posted to [reloadHandler].
+     */
+    private var reloadPending = false
+
+    /**
+     * Posted to [reloadHandler] for [sectionsValidUntil] while resumed.
+     */
+    private val updateSectionsRunnable = Runnable { updateSections() }
+
+    /**
+     * The time at which the shown sections change without the reminders changing (a reminder becomes due or the day
+     * changes), or [Long.MAX_VALUE] if they do not.
+     */
+    private var sectionsValidUntil = Long.MAX_VALUE
+
+    /**
+     * The sections currently shown in [concatAdapter], in order, except the DONE section.
+     */
+    private val shownSections = ArrayList<ShownSection>()
+
     /**
      * Maximum number of sections (days in the future) for the recycler view to display scheduled reminders in their own section.
      */
     val maxDaySections = 7
 
     /**
-     * Mapping containing currently displayed reminders, the key being the reminder ID. May only be updated via [reloadRemindersListAndUpdateRecyclerView].
+     * Mapping containing currently displayed reminders, the key being the reminder ID. May only be updated via [reloadRemindersListAndUpdateRecyclerView],
+     * except for DONE reminders, which are only contained while loaded by [doneRemindersAdapter] (or while selected).
      */
     private lateinit var reminders: SparseArray<Reminder>
+
+    private lateinit var rowFactory: ReminderRow.Factory
+
+    /**
+     * IDs of all reminders in the list, also of DONE reminders not loaded into [reminders].
+     */
+    private var reminderIds = IntArray(0)
+
+    /**
+     * Number of reminders in the list per status (indexed by ordinal).
+     */
+    private var reminderCountByStatus = IntArray(Reminder.Status.values().size)
+
+    /**
+     * The current search query, or null if not searching. While searching, only the reminders matching the query are
+     * shown (see [ReminderSearch]). Also read by the background thread to skip outdated searches.
+     */
+    @Volatile
+    private var searchQuery: String? = null
+
+    /**
+     * The adapter of the current DONE section, or null if there is none.
+     */
+    private var doneRemindersAdapter: PagedDoneRemindersAdapter? = null
     private lateinit var remindersListRecyclerView: RecyclerView
     private lateinit var concatAdapter: ConcatAdapter
 
     /**
-     * The current selection of items in [remindersListRecyclerView] (reminder IDs). Must be updated when reminders are removed.
+     * Pool of view holders shared by all section adapters, kept across reloads. View types are the layout resource IDs
+     * of the items (see [RemindersListAdapter.getItemViewType] and [HeaderAdapter.getItemViewType]).
+     */
+    private val recycledViewPool = RecyclerView.RecycledViewPool().apply {
+        setMaxRecycledViews(R.layout.reminder_card_datefield_time_only, MAX_RECYCLED_REMINDER_VIEWS)
+        setMaxRecycledViews(R.layout.reminder_card_datefield_full_date, MAX_RECYCLED_REMINDER_VIEWS)
+    }
+
+    /**
+     * The current selection of items in [remindersListRecyclerView] (reminder IDs). Is updated when the list is reloaded.
      */
     private lateinit var selection // initialized in onCreate; using IDs as reminder content can change
-            : MutableSet<Int>
+            : ReminderSelection
 
     /**
      * The current action mode or null if not active.
@@ -134,22 +204,28 @@ class RemindersListFragment : Fragment() {
                     }
                 }
                 R.id.action_mark_done -> {
-                    ReminderManager.updateReminders(
-                        requireContext(),
-                        { r: Reminder -> r.status = Reminder.Status.DONE },
-                        selection,
-                        true
-                    ) // have to reschedule as some might still be scheduled
+                    // Also reschedules, as some might still be scheduled and recurring ones are scheduled again
+                    ReminderManager.markRemindersDone(requireContext(), selection.ids())
                     mode.finish()
                 }
-                R.id.action_add_template ->
+                R.id.action_add_template -> {
+                    val ids = selection.ids()
+                    val now = System.currentTimeMillis()
+                    TemplateStorage.addTemplates(
+                        requireContext(),
+                        ReminderStorage.getReminders(requireContext())
+                            .filter { ids.contains(it.id) }
+                            .map { Template.fromReminder(it, now) }
+                    )
                     Toast.makeText(
                         context,
-                        getString(R.string.reminder_list_action_placeholder),
+                        getString(R.string.reminder_list_action_add_template_feedback),
                         Toast.LENGTH_SHORT
                     ).show()
+                    mode.finish()
+                }
                 R.id.action_delete -> {
-                    ReminderManager.removeReminders(requireContext(), selection)
+                    ReminderManager.removeReminders(requireContext(), selection.ids())
                     mode.finish()
                 }
                 R.id.action_select_all -> {
@@ -166,7 +242,9 @@ class RemindersListFragment : Fragment() {
                 if (selection.size != 1) {
                     throw ImplementationError("Selection must have size 1.")
                 }
-                return reminders[selection.iterator().next()]
+                val id = selection.ids().first()
+                // A selected DONE reminder may have been dropped from the loaded window
+                return reminders[id] ?: ReminderStorage.getReminder(requireContext(), id)
             }
 
         override fun onDestroyActionMode(mode: ActionMode) {
@@ -177,12 +255,12 @@ class RemindersListFragment : Fragment() {
 
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
-        selection = HashSet()
+        selection = ReminderSelection()
         reminders = SparseArray()
+        rowFactory = ReminderRow.Factory(requireContext())
         broadcastReceiver = object : BroadcastReceiver() {
             override fun onReceive(context: Context, intent: Intent) {
-                Prefs.setRemindersUpdated(false, getContext()) // clear flag
-                reloadRemindersListAndUpdateRecyclerView()
+                requestReload()
             }
         }
     }
@@ -194,7 +272,9 @@ class RemindersListFragment : Fragment() {
     ): View? {
         val rootView = inflater.inflate(R.layout.fragment_reminders_list, container, false)
         remindersListRecyclerView = rootView.findViewById(R.id.reminders_list)
+        remindersListRecyclerView.setRecycledViewPool(recycledViewPool)
         reloadRemindersListAndUpdateRecyclerView()
+        preinflateViewHolders()
         return rootView
     }
 
@@ -206,16 +286,67 @@ class RemindersListFragment : Fragment() {
             )
         )
         if (Prefs.isRemindersUpdated(context)) {
-            Prefs.setRemindersUpdated(false, context)
+            cancelPendingReload()
             reloadRemindersListAndUpdateRecyclerView()
+        } else {
+            scheduleSectionsUpdate() // Updates immediately if the sections changed while paused
         }
     }
 
     override fun onPause() {
         LocalBroadcastManager.getInstance(requireActivity()).unregisterReceiver(broadcastReceiver)
+        // The reminders updated flag is still set, so a pending reload is performed in onResume instead
+        cancelPendingReload()
+        reloadHandler.removeCallbacks(updateSectionsRunnable)
         super.onPause()
     }
 
+    override fun onDestroyView() {
+        cancelPendingReload()
+        reloadHandler.removeCallbacks(updateSectionsRunnable)
+        doneRemindersAdapter = null // Discard pages still being loaded
+        super.onDestroyView()
+    }
+
+    /**
+     * Reload the reminders list after [RELOAD_COALESCING_DELAY] milliseconds unless a reload is already pending.
+     * This way, a burst of updates results in only one reload, which reflects the latest state.
+     */
+    private fun requestReload() {
+        if (!reloadPending) {
+            reloadPending = true
+            reloadHandler.postDelayed(reloadRunnable, RELOAD_COALESCING_DELAY)
+        }
+    }
+
+    private fun cancelPendingReload() {
+        if (reloadPending) {
+            reloadHandler.removeCallbacks(reloadRunnable)
+            reloadPending = false
+        }
+    }
+
+    /**
+     * Inflate view holders for both date field layouts into [recycledViewPool], one at a time when the main thread is
+     * idle, so that showing a layout for the first time (e.g., when scrolling to another section) does not inflate views.
+     */
+    private fun preinflateViewHolders() {
+        val adapter = RemindersListAdapter(emptyList())
+        val viewTypes = intArrayOf(R.layout.reminder_card_datefield_time_only, R.layout.reminder_card_datefield_full_date)
+        var next = 0
+        Looper.myQueue().addIdleHandler {
+            if (view == null) {
+                return@addIdleHandler false
+            }
+            val viewType = viewTypes[next % viewTypes.size]
+            if (recycledViewPool.getRecycledViewCount(viewType) < PREINFLATED_REMINDER_VIEWS) {
+                recycledViewPool.putRecycledView(adapter.createViewHolder(remindersListRecyclerView, viewType))
+            }
+            next++
+            next < PREINFLATED_REMINDER_VIEWS * viewTypes.size // Keep the handler until all are inflated
+        }
+    }
+
     /*
      * Start [EditReminderDialogActivity] and reload reminders list when the activity finishes
      * with [Activity.RESULT_OK].
@@ -238,43 +369,87 @@ class RemindersListFragment : Fragment() {
      * Call when the reminders list has changed, to reload all items.
      */
     fun reloadRemindersListAndUpdateRecyclerView() {
+        Prefs.setRemindersUpdated(false, context) // clear flag
+        searchQuery?.let {
+            loadSearchResults(it)
+            return
+        }
         // Load reminders list
         val remindersList = ReminderStorage.getReminders(requireContext())
-        // Add entries to map (SparseArray)
+        // Add entries to map (SparseArray), DONE reminders are added when loaded by the DONE section's adapter
         reminders.clear()
-        for (reminder in remindersList) {
-            reminders.put(reminder.id, reminder)
+        reminderIds = IntArray(remindersList.size)
+        reminderCountByStatus = IntArray(Reminder.Status.values().size)
+        for ((i, reminder) in remindersList.withIndex()) {
+            reminderIds[i] = reminder.id
+            reminderCountByStatus[reminder.status.ordinal]++
+            if (reminder.status != Reminder.Status.DONE) {
+                reminders.put(reminder.id, reminder)
+            }
         }
-        concatAdapter = ConcatAdapter()
-        val addSection = Function { section: ReminderSection ->
-            concatAdapter.addAdapter(HeaderAdapter(section.title))
-            concatAdapter.addAdapter(RemindersListAdapter(section.reminders, section.timeOnly))
+        concatAdapter = createConcatAdapter()
+        shownSections.clear()
+        val sections = buildSections(Calendar.getInstance())
+        for ((i, section) in sections.sections.withIndex()) {
+            showSection(i, section)
         }
 
-        // Section reminders by status
+        // Section for DONE reminders, starting with the first page (the remaining ones are loaded when scrolling there)
+        doneRemindersAdapter = null
+        val doneCount = reminderCountByStatus[Reminder.Status.DONE.ordinal]
+        if (doneCount > 0) {
+            val firstPage = ReminderStorage.selectDoneRemindersAfter(remindersList, null, DONE_PAGE_SIZE)
+            val adapter = PagedDoneRemindersAdapter(registerDoneReminders(firstPage), doneCount > firstPage.size)
+            concatAdapter.addAdapter(HeaderAdapter(getString(R.string.reminder_section_done), HEADER_ID_DONE))
+            concatAdapter.addAdapter(adapter)
+            doneRemindersAdapter = adapter
+        }
+
+        showConcatAdapter(remindersList)
+        sectionsValidUntil = sections.validUntil
+        scheduleSectionsUpdate()
+    }
+
+    /**
+     * Divide the loaded reminders which are not DONE (see [reminders]) into sections as of the given time.
+     */
+    private fun buildSections(now: Calendar): ReminderSections {
+        val sections = ArrayList<ReminderSection>()
         val remindersDue: MutableList<Reminder> = ArrayList()
         val remindersScheduled: MutableList<Reminder> = ArrayList()
-        val remindersDone: MutableList<Reminder> = ArrayList()
-        for (reminder in remindersList) {
+        for (i in 0 until reminders.size()) {
+            val reminder = reminders.valueAt(i)
             when (reminder.status) {
                 Reminder.Status.NOTIFIED -> remindersDue.add(reminder)
                 Reminder.Status.SCHEDULED -> remindersScheduled.add(reminder)
-                Reminder.Status.DONE -> remindersDone.add(reminder)
+                Reminder.Status.DONE -> Unit // Loaded in pages by the DONE section's adapter
             }
         }
 
-        // Sort scheduled and done reminders
-        remindersScheduled.sort()
-        remindersDone.sortWith { o1: Reminder, o2: Reminder -> -o1.compareTo(o2) }
+        // Show the upcoming occurrences of recurring reminders within the day sections
+        if (maxDaySections != 0) {
+            val windowEnd = DateTimeUtil.getDateAtMidnight(now).apply { add(Calendar.DAY_OF_MONTH, maxDaySections) }.timeInMillis
+            for (i in 0 until reminders.size()) {
+                val reminder = reminders.valueAt(i)
+                val recurrence = reminder.recurrence ?: continue
+                if (reminder.status == Reminder.Status.DONE) {
+                    continue
+                }
+                recurrence.occurrences(recurrence.next(Date(reminder.occurrenceTime), now.timeInMillis), windowEnd)
+                    .mapTo(remindersScheduled) {
+                        reminder.copy(time = it.time, status = Reminder.Status.SCHEDULED, occurrence = null)
+                    }
+            }
+        }
 
-        // Further section scheduled reminders
-        val now = Calendar.getInstance()
-        val currentTime = Calendar.getInstance() // represents the day for the current section
+        // Sort scheduled reminders
+        remindersScheduled.sort()
+        val currentTime = now.clone() as Calendar // represents the day for the current section
         var it = remindersScheduled.listIterator() // iterates through all reminders to be divided among the sections
 
         // If some of the scheduled reminders are actually already due (in mean time or because the status was not correctly updated) move them to the due list
         for (reminder in it) {
-            if (!reminder.date.after(now.time)) {
+            if (reminder.time <= now.timeInMillis) {
                 remindersDue.add(reminder)
                 it.remove()
             } else {
@@ -282,16 +457,20 @@ class RemindersListFragment : Fragment() {
             }
         }
 
+        // The sections change when the next scheduled reminder becomes due or, if earlier, when the day changes
+        val nextMidnight = DateTimeUtil.getDateAtMidnight(now).apply { add(Calendar.DAY_OF_MONTH, 1) }.timeInMillis
+        val validUntil = minOf(remindersScheduled.firstOrNull()?.time ?: Long.MAX_VALUE, nextMidnight)
+
         // Sort due reminders after being composed completely
         remindersDue.sortWith { o1: Reminder, o2: Reminder -> -o1.compareTo(o2) }
 
         // Section for due reminders (with a date not in the future)
         if (remindersDue.isNotEmpty()) {
-            addSection.apply(
+            sections.add(
                 ReminderSection(
+                    HEADER_ID_DUE,
                     getString(R.string.reminder_section_due),
-                    DisplayType.TIME_ONLY_IF_TODAY,
-                    remindersDue
+                    makeRows(remindersDue, DisplayType.TIME_ONLY_IF_TODAY)
                 )
             )
         }
@@ -324,17 +503,20 @@ class RemindersListFragment : Fragment() {
                 }
             }
             var remindersCurrentDay: MutableList<Reminder> = ArrayList()
-            var section = ReminderSection(
-                makeSectionTitle.apply(dayOffset),
-                DisplayType.TIME_ONLY,
-                remindersCurrentDay
-            ) // the current section
+            // Add the section for the current day
+            fun addDaySection() = sections.add(
+                ReminderSection(
+                    HEADER_ID_FIRST_DAY - dayOffset,
+                    makeSectionTitle.apply(dayOffset),
+                    makeRows(remindersCurrentDay, DisplayType.TIME_ONLY)
+                )
+            )
             iteratorLoop@ for (reminder in it) {
                 // If the current reminder does not belong to the current day, advance the current day until it matches the reminder's or the maximum day is reached
-                while (!DateTimeUtil.isSameDay(reminder.date, currentTime.time)) {
+                while (!DateTimeUtil.isSameDay(reminder.time, currentTime.timeInMillis)) {
                     // If there were reminders for the current section, add it to the adapter and create a new list for the next section
                     if (remindersCurrentDay.isNotEmpty()) {
-                        addSection.apply(section)
+                        addDaySection()
                         remindersCurrentDay = ArrayList()
                     }
                     // Now remindersCurrentDay is empty and can take the reminders for the next day
@@ -344,19 +526,13 @@ class RemindersListFragment : Fragment() {
                         break@iteratorLoop
                     }
                     currentTime.add(Calendar.DAY_OF_MONTH, 1)
-                    // Create the new section
-                    section = ReminderSection(
-                        makeSectionTitle.apply(dayOffset),
-                        DisplayType.TIME_ONLY,
-                        remindersCurrentDay
-                    )
                 }
                 remindersCurrentDay.add(reminder)
             }
 
             // The last section may not have been added yet (if the dayOffset has not been tried to be raised above maximum when the iterator reached the end of the list)
             if (remindersCurrentDay.isNotEmpty()) {
-                addSection.apply(section)
+                addDaySection()
             }
         }
         // Scheduled reminders which are further in the future than the days which have an own section
@@ -365,27 +541,178 @@ class RemindersListFragment : Fragment() {
             futureReminders.add(reminder)
         }
         if (futureReminders.isNotEmpty()) {
-            addSection.apply(
+            sections.add(
                 ReminderSection(
+                    HEADER_ID_FUTURE,
                     getString(R.string.reminder_section_future),
-                    DisplayType.FULL,
-                    futureReminders
+                    makeRows(futureReminders, DisplayType.FULL)
                 )
             )
         }
 
-        // Section for DONE reminders
-        if (remindersDone.isNotEmpty()) {
-            addSection.apply(
-                ReminderSection(
-                    getString(R.string.reminder_section_done),
-                    DisplayType.FULL,
-                    remindersDone
-                )
+        return ReminderSections(sections, validUntil)
+    }
+
+    /**
+     * Add the given DONE reminders to [reminders] and create their rows.
+     */
+    private fun registerDoneReminders(page: List<Reminder>): MutableList<ReminderRow> =
+        page.mapTo(ArrayList(page.size)) {
+            reminders.put(it.id, it)
+            makeRow(it, DisplayType.FULL)
+        }
+
+    private fun makeRows(reminders: List<Reminder>, displayType: DisplayType): List<ReminderRow> =
+        reminders.map { makeRow(it, displayType) }
+
+    private fun makeRow(reminder: Reminder, displayType: DisplayType): ReminderRow =
+        if (isOccurrence(reminder)) {
+            rowFactory.create(
+                reminder,
+                // Selecting an occurrence selects the recurring reminder, which may have a different status
+                reminders[reminder.id].status,
+                // Reminder IDs are less than 2^20, so this does not collide with them or other occurrences
+                (reminder.time / 60000) shl 20 or reminder.id.toLong(),
+                displayType
+            )
+        } else {
+            rowFactory.create(reminder, reminder.status, reminder.id.toLong(), displayType)
+        }
+
+    /**
+     * Add the adapters for the given section to [concatAdapter] as the section at the given index.
+     */
+    private fun showSection(index: Int, section: ReminderSection) {
+        val shownSection = ShownSection(
+            section,
+            HeaderAdapter(section.title, section.headerId),
+            RemindersListAdapter(section.rows)
+        )
+        concatAdapter.addAdapter(2 * index, shownSection.headerAdapter)
+        concatAdapter.addAdapter(2 * index + 1, shownSection.remindersAdapter)
+        shownSections.add(index, shownSection)
+    }
+
+    /**
+     * Update the sections to the current time without reloading the reminders. Only the sections which changed are
+     * replaced, so that the items of the others are not rebound.
+     */
+    private fun updateSections() {
+        val sections = buildSections(Calendar.getInstance())
+        val iterator = shownSections.iterator()
+        for (shownSection in iterator) {
+            if (shownSection.section !in sections.sections) {
+                concatAdapter.removeAdapter(shownSection.headerAdapter)
+                concatAdapter.removeAdapter(shownSection.remindersAdapter)
+                iterator.remove()
+            }
+        }
+        // The remaining sections are in the same order as in the new sections
+        for ((i, section) in sections.sections.withIndex()) {
+            if (i == shownSections.size || shownSections[i].section != section) {
+                showSection(i, section)
+            }
+        }
+        sectionsValidUntil = sections.validUntil
+        scheduleSectionsUpdate()
+    }
+
+    /**
+     * Post [updateSectionsRunnable] for [sectionsValidUntil], replacing a previously posted one.
+     */
+    private fun scheduleSectionsUpdate() {
+        reloadHandler.removeCallbacks(updateSectionsRunnable)
+        if (sectionsValidUntil != Long.MAX_VALUE) {
+            reloadHandler.postDelayed(
+                updateSectionsRunnable,
+                maxOf(0L, sectionsValidUntil - System.currentTimeMillis())
             )
         }
+    }
+
+    /**
+     * Show only the reminders matching the given query, or the whole list when the query is null or blank.
+     */
+    fun setSearchQuery(query: String?) {
+        val newQuery = query?.takeIf { it.isNotBlank() }
+        if (newQuery != searchQuery) {
+            searchQuery = newQuery
+            if (view != null) {
+                cancelPendingReload()
+                reloadRemindersListAndUpdateRecyclerView()
+            }
+        }
+    }
+
+    /**
+     * Search for the given query in the background and show the results in one section, unless the query changed in
+     * the meantime.
+     */
+    private fun loadSearchResults(query: String) {
+        val context = requireContext().applicationContext
+        BackgroundExecutor.execute {
+            if (searchQuery != query) {
+                return@execute // Skip searches for queries typed in the meantime
+            }
+            val results = ReminderSearch.search(context, query)
+            reloadHandler.post {
+                if (searchQuery == query && view != null) {
+                    showSearchResults(results)
+                }
+            }
+        }
+    }
+
+    private fun showSearchResults(results: List<Reminder>) {
+        reminders.clear()
+        reminderIds = IntArray(results.size)
+        reminderCountByStatus = IntArray(Reminder.Status.values().size)
+        for ((i, reminder) in results.withIndex()) {
+            reminderIds[i] = reminder.id
+            reminderCountByStatus[reminder.status.ordinal]++
+            reminders.put(reminder.id, reminder)
+        }
+        doneRemindersAdapter = null
+        shownSections.clear()
+        // The search results do not depend on the time
+        sectionsValidUntil = Long.MAX_VALUE
+        reloadHandler.removeCallbacks(updateSectionsRunnable)
+        concatAdapter = createConcatAdapter()
+        concatAdapter.addAdapter(
+            HeaderAdapter(
+                getString(if (results.isEmpty()) R.string.reminder_section_search_no_results else R.string.reminder_section_search_results),
+                HEADER_ID_SEARCH
+            )
+        )
+        concatAdapter.addAdapter(RemindersListAdapter(makeRows(results, DisplayType.FULL)))
+        showConcatAdapter(results)
+    }
+
+    private fun createConcatAdapter(): ConcatAdapter =
+        // Sharing view types and stable IDs among the sections lets the recycler view reuse view holders across sections and reloads
+        ConcatAdapter(
+            ConcatAdapter.Config.Builder()
+                .setIsolateViewTypes(false)
+                .setStableIdMode(ConcatAdapter.Config.StableIdMode.SHARED_STABLE_IDS)
+                .build()
+        )
 
-        remindersListRecyclerView.adapter = concatAdapter // This relayouts the view
+    /**
+     * Show [concatAdapter] and update the selection to the given reminders, which are all reminders of the list.
+     */
+    private fun showConcatAdapter(remindersList: List<Reminder>) {
+        // Unlike setting the adapter, swapping keeps the recycled view pool and lets existing views be rebound by their stable IDs
+        remindersListRecyclerView.swapAdapter(concatAdapter, false) // This relayouts the view
+
+        // Drop selected reminders which no longer exist (or do not match the search) and account for changed status
+        if (!selection.isEmpty()) {
+            selection.retainOnly(remindersList)
+            if (selection.isEmpty()) {
+                actionMode?.finish()
+            } else {
+                actionMode?.invalidate()
+            }
+        }
     }
 
     /**
@@ -400,15 +727,9 @@ class RemindersListFragment : Fragment() {
             menuActionCopyText,
             selection.size == 1
         )
-        var selectionContainsDone = false
-        for (i in selection) {
-            if (reminders[i].status == Reminder.Status.DONE) {
-                selectionContainsDone = true
-            }
-        }
         setMenuItemAvailability(
             menuActionMarkDone,
-            !selectionContainsDone
+            selection.count(Reminder.Status.DONE) == 0
         )
     }
 
@@ -418,35 +739,54 @@ class RemindersListFragment : Fragment() {
     }
 
     fun selectAll() {
-        // Set selected state for all [ReminderViewHolder]s
-        for (i in 0 until remindersListRecyclerView.adapter!!.itemCount) {
-            val viewHolder = remindersListRecyclerView.findViewHolderForAdapterPosition(i)
-            if (viewHolder is ReminderViewHolder) {
-                viewHolder.setSelected(requireContext())
-            }
-        }
-        // Add all reminders to selection
-        for ((id) in reminders.valueIterator()) {
-            selection.add(id)
-        }
+        selection.selectAll(reminderIds, reminderCountByStatus)
+        notifySelectionChanged()
     }
 
     fun unselectAll() {
-        // Set selected state for all [ReminderViewHolder]s
-        for (i in 0 until remindersListRecyclerView.adapter!!.itemCount) {
-            val viewHolder = remindersListRecyclerView.findViewHolderForAdapterPosition(i)
-            if (viewHolder is ReminderViewHolder) {
-                viewHolder.setUnselected()
+        selection.clear()
+        notifySelectionChanged()
+    }
+
+    /**
+     * Let all items update their selected state. Only bound view holders are rebound, and only their selected state.
+     */
+    private fun notifySelectionChanged() {
+        for (adapter in concatAdapter.adapters) {
+            if (adapter is RemindersListAdapter) {
+                adapter.notifyItemRangeChanged(0, adapter.itemCount, PAYLOAD_SELECTION)
             }
         }
-        // Remove all reminders from selection
-        selection.clear()
     }
 
-    private class ReminderSection(
+    /**
+     * Whether the given list item is an upcoming occurrence of a recurring reminder other than the stored one.
+     */
+    private fun isOccurrence(reminder: Reminder) = reminder.isRecurring && reminders[reminder.id] !== reminder
+
+    private data class ReminderSection(
+        /**
+         * Stable ID of the section's header.
+         */
+        val headerId: Long,
         val title: String,
-        val timeOnly: DisplayType,
-        val reminders: List<Reminder>
+        val rows: List<ReminderRow>
+    )
+
+    /**
+     * The sections of the list, except the DONE section, as of some time.
+     *
+     * @param validUntil the time at which the sections change without the reminders changing
+     */
+    private class ReminderSections(val sections: List<ReminderSection>, val validUntil: Long)
+
+    /**
+     * A section shown in the list with its adapters in [concatAdapter].
+     */
+    private class ShownSection(
+        val section: ReminderSection,
+        val headerAdapter: HeaderAdapter,
+        val remindersAdapter: RemindersListAdapter
     )
 
     companion object {
@@ -455,6 +795,54 @@ class RemindersListFragment : Fragment() {
 
         fun getRemindersUpdatedBroadcastIntent(): Intent = Intent(BROADCAST_REMINDERS_UPDATED)
 
+        /**
+         * Time in milliseconds within which [BROADCAST_REMINDERS_UPDATED] broadcasts are coalesced into one reload.
+         */
+        private const val RELOAD_COALESCING_DELAY = 100L
+
+        /**
+         * Payload for item changes which only concern the selected state.
+         */
+        private val PAYLOAD_SELECTION = Any()
+
+        /**
+         * Stable IDs of the section headers. They are negative to not collide with reminder IDs.
+         */
+        private const val HEADER_ID_DUE = -1L
+        private const val HEADER_ID_FUTURE = -2L
+        private const val HEADER_ID_DONE = -3L
+        private const val HEADER_ID_SEARCH = -4L
+
+        /**
+         * Stable ID of the header of the first day section; the following day sections count down from it.
+         */
+        private const val HEADER_ID_FIRST_DAY = -10L
+
+        /**
+         * Number of view holders per date field layout to inflate in advance.
+         */
+        private const val PREINFLATED_REMINDER_VIEWS = 8
+
+        /**
+         * Maximum number of view holders per date field layout kept in the recycled view pool.
+         */
+        private const val MAX_RECYCLED_REMINDER_VIEWS = 20
+
+        /**
+         * Number of DONE reminders loaded at once.
+         */
+        private const val DONE_PAGE_SIZE = 50
+
+        /**
+         * Maximum number of DONE reminders kept loaded.
+         */
+        private const val DONE_MAX_RESIDENT = 3 * DONE_PAGE_SIZE
+
+        /**
+         * Distance from the end of the loaded DONE reminders at which the next page is loaded.
+         */
+        private const val DONE_PREFETCH_DISTANCE = 10
+
         /**
          * Create a new instance of this fragment.
          *
@@ -467,119 +855,210 @@ class RemindersListFragment : Fragment() {
     }
 
     /**
-     * Adapter for a list for reminders, belonging to one "section" (prepended by a [HeaderAdapter]).
-     * It has a [DisplayType] determining how the reminder entries should be displayed.
+     * Adapter for a list for reminders, belonging to one "section" (prepended by a [HeaderAdapter]). It only binds the
+     * given rows, which are prepared when building the sections.
      */
-    private inner class RemindersListAdapter(
-        private val reminders: List<Reminder>,
-        private val displayType: DisplayType
+    private open inner class RemindersListAdapter(
+        private val rows: List<ReminderRow>
     ) : RecyclerView.Adapter<ReminderViewHolder>() {
 
+        init {
+            setHasStableIds(true)
+        }
+
+        override fun getItemId(position: Int): Long = rows[position].itemId
+
         /**
          * Returns the resource id of the layout for the date field the [ReminderViewHolder] will use.
          */
-        override fun getItemViewType(position: Int): Int =
-            when (displayType) {
-                DisplayType.TIME_ONLY -> R.layout.reminder_card_datefield_time_only
-                DisplayType.FULL -> R.layout.reminder_card_datefield_full_date
-                DisplayType.TIME_ONLY_IF_TODAY ->
-                    if (DateTimeUtil.isToday(reminders[position].date)) {
-                        R.layout.reminder_card_datefield_time_only
-                    } else {
-                        R.layout.reminder_card_datefield_full_date
-                    }
-            }
+        override fun getItemViewType(position: Int): Int = rows[position].viewType
 
         override fun getItemCount(): Int {
-            return reminders.size
+            return rows.size
         }
 
         override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): ReminderViewHolder {
             val cardView: CardView =
                 LayoutInflater.from(context)
                     .inflate(R.layout.reminder_card, parent, false) as CardView
-            return when (viewType) {
+            val holder = when (viewType) {
                 // We do not use the resource id directly because we have to instantiate the
                 // correct subclass anyway.
                 R.layout.reminder_card_datefield_time_only -> TimeOnlyReminderViewHolder(cardView)
                 R.layout.reminder_card_datefield_full_date -> FullDateReminderViewHolder(cardView)
                 else -> error("Unknown viewType")
             }
+            // View holders are shared among the sections' adapters, so the listeners act on the bound row
+            holder.itemView.setOnLongClickListener { onReminderLongClicked(holder) }
+            holder.itemView.setOnClickListener { onReminderClicked(holder) }
+            return holder
         }
 
-        override fun onBindViewHolder(holder: ReminderViewHolder, position: Int) {
-            val reminder = reminders[position]
-            holder.descriptionView.text = reminder.text
-            holder.timeView.text = DateTimeUtil.formatTime(reminder.date)
-            holder.initializeDateView(reminder.date, requireContext())
-
-            // Set color of datefield
-            val dateColor: Int = when (reminder.status) {
-                Reminder.Status.SCHEDULED -> ContextCompat.getColor(
-                    requireContext(),
-                    R.color.bg_date_scheduled
-                )
-                Reminder.Status.NOTIFIED -> ContextCompat.getColor(
-                    requireContext(),
-                    R.color.bg_date_notified
-                )
-                Reminder.Status.DONE -> ContextCompat.getColor(
-                    requireContext(),
-                    R.color.bg_date_done
-                )
+        override fun onBindViewHolder(holder: ReminderViewHolder, position: Int, payloads: List<Any>) {
+            if (payloads.isNotEmpty() && payloads.all { it === PAYLOAD_SELECTION }) {
+                bindSelection(holder, rows[position].reminder.id)
+            } else {
+                onBindViewHolder(holder, position)
             }
-            holder.datefieldView.setBackgroundColor(dateColor)
+        }
 
-            // Set selection mode of holder
-            if (selection.contains(reminder.id)) {
+        private fun bindSelection(holder: ReminderViewHolder, reminderId: Int) {
+            if (selection.contains(reminderId)) {
                 holder.setSelected(requireContext())
             } else {
                 holder.setUnselected()
             }
+        }
+
+        override fun onBindViewHolder(holder: ReminderViewHolder, position: Int) {
+            val row = rows[position]
+            holder.bind(row)
+            bindSelection(holder, row.reminder.id)
+        }
+    }
 
-            holder.itemView.setOnLongClickListener {
-                if (actionMode != null) {
-                    return@setOnLongClickListener false
+    private fun onReminderLongClicked(holder: ReminderViewHolder): Boolean {
+        val row = holder.row
+        if (actionMode != null || row == null) {
+            return false
+        }
+        selection.add(row.reminder.id, row.status) // selection must be up-to-date when initializing action-mode
+        (activity as AppCompatActivity).startSupportActionMode(actionModeCallback)
+        holder.setSelected(requireContext())
+        return true
+    }
+
+    private fun onReminderClicked(holder: ReminderViewHolder) {
+        val row = holder.row ?: return
+        if (actionMode == null) {
+            startActivity(
+                EditReminderDialogActivity.getIntentEditReminder(
+                    context,
+                    row.reminder.id
+                )
+            )
+            // The following is currently not necessary as reminder updates result in a broadcast received by the fragment.
+            // startEditReminderDialogActivityAndReloadOnOK(reminder.id)
+        } else {
+            if (selection.contains(row.reminder.id)) {
+                selection.remove(row.reminder.id, row.status)
+                holder.setUnselected()
+                if (selection.isEmpty()) {
+                    actionMode!!.finish()
                 }
-                selection.add(reminder.id) // selection must be up-to-date when initializing action-mode
-                (activity as AppCompatActivity).startSupportActionMode(actionModeCallback)
+            } else {
+                selection.add(row.reminder.id, row.status)
                 holder.setSelected(requireContext())
-                true
             }
+            updateAvailableActions()
+        }
+    }
 
-            holder.itemView.setOnClickListener {
-                if (actionMode == null) {
-                    startActivity(
-                        EditReminderDialogActivity.getIntentEditReminder(
-                            context,
-                            reminder.id
-                        )
-                    )
-                    // The following is currently not necessary as reminder updates result in a broadcast received by the fragment.
-                    // startEditReminderDialogActivityAndReloadOnOK(reminder.id)
+    /**
+     * Adapter for the DONE section, holding only a window of at most [DONE_MAX_RESIDENT] reminders in
+     * [ReminderStorage.DONE_ORDER]. When the user scrolls near one end of the window, the next page is loaded in the
+     * background and a page is dropped at the other end. Loaded reminders are added to [reminders].
+     */
+    private inner class PagedDoneRemindersAdapter(
+        private val window: MutableList<ReminderRow>,
+        /**
+         * Whether there may be reminders after the window.
+         */
+        private var hasOlder: Boolean
+    ) : RemindersListAdapter(window) {
+        /**
+         * Whether there are reminders before the window (which have been dropped).
+         */
+        private var hasNewer = false
+        private var loading = false
+
+        override fun onBindViewHolder(holder: ReminderViewHolder, position: Int) {
+            super.onBindViewHolder(holder, position)
+            if (hasOlder && position >= window.size - DONE_PREFETCH_DISTANCE) {
+                loadPage(true)
+            } else if (hasNewer && position < DONE_PREFETCH_DISTANCE) {
+                loadPage(false)
+            }
+        }
+
+        private fun loadPage(older: Boolean) {
+            if (loading) {
+                return
+            }
+            loading = true
+            val context = requireContext().applicationContext
+            val anchor = if (older) window.last().reminder else window.first().reminder
+            BackgroundExecutor.execute {
+                val page = if (older) {
+                    ReminderStorage.getDoneRemindersAfter(context, anchor, DONE_PAGE_SIZE)
                 } else {
-                    if (selection.contains(reminder.id)) {
-                        selection.remove(reminder.id)
-                        holder.setUnselected()
-                        if (selection.isEmpty()) {
-                            actionMode!!.finish()
-                        }
-                    } else {
-                        selection.add(reminder.id)
-                        holder.setSelected(requireContext())
+                    ReminderStorage.getDoneRemindersBefore(context, anchor, DONE_PAGE_SIZE)
+                }
+                // Notifying the adapter is not allowed during layout, so always post (also discard outdated results)
+                reloadHandler.post {
+                    if (doneRemindersAdapter === this) {
+                        loading = false
+                        if (older) appendPage(page) else prependPage(page)
                     }
-                    updateAvailableActions()
                 }
             }
         }
+
+        private fun appendPage(page: List<Reminder>) {
+            hasOlder = page.size == DONE_PAGE_SIZE
+            val start = window.size
+            window.addAll(registerDoneReminders(page))
+            notifyItemRangeInserted(start, page.size)
+            val excess = window.size - DONE_MAX_RESIDENT
+            if (excess > 0) {
+                drop(window.subList(0, excess))
+                notifyItemRangeRemoved(0, excess)
+                hasNewer = true
+            }
+        }
+
+        private fun prependPage(page: List<Reminder>) {
+            hasNewer = page.size == DONE_PAGE_SIZE
+            window.addAll(0, registerDoneReminders(page))
+            notifyItemRangeInserted(0, page.size)
+            val excess = window.size - DONE_MAX_RESIDENT
+            if (excess > 0) {
+                drop(window.subList(window.size - excess, window.size))
+                notifyItemRangeRemoved(window.size, excess)
+                hasOlder = true
+            }
+        }
+
+        /**
+         * Remove the given part of the window, also from [reminders] unless selected.
+         */
+        private fun drop(part: MutableList<ReminderRow>) {
+            for (row in part) {
+                if (!selection.contains(row.reminder.id)) {
+                    reminders.remove(row.reminder.id)
+                }
+            }
+            part.clear()
+        }
     }
 
     /**
      * An adapter representing a header entry. It will always contain one [HeaderViewHolder].
      */
-    private inner class HeaderAdapter(val title: String) :
+    private inner class HeaderAdapter(val title: String, private val headerId: Long) :
         RecyclerView.Adapter<HeaderViewHolder>() {
 
+        init {
+            setHasStableIds(true)
+        }
+
+        override fun getItemId(position: Int): Long = headerId
+
+        /**
+         * View types are shared among all adapters of the [ConcatAdapter], so use the layout resource id.
+         */
+        override fun getItemViewType(position: Int): Int = R.layout.reminder_section_header
+
         override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): HeaderViewHolder {
             val viewHolder = LayoutInflater.from(context)
                 .inflate(R.layout.reminder_section_header, parent, false)
@@ -1,51 +0,0 @@
-/*
- * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
- *
- * This program is free software: you can redistribute it and/or modify
- * it under the terms of the GNU General Public License as published by
- * the Free Software Foundation, either version 3 of the License, or
- * (at your option) any later version.
- *
- * This program is distributed in the hope that it will be useful,
- * but WITHOUT ANY WARRANTY; without even the implied warranty of
- * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
- * GNU General Public License for more details.
- *
- * You should have received a copy of the GNU General Public License
- * along with this program.  If not, see <http://www.gnu.org/licenses/>.
- */
-
-package felixwiemuth.simplereminder.ui.reminderslist;
-
-import android.os.Bundle;
-import androidx.fragment.app.Fragment;
-import android.view.LayoutInflater;
-import android.view.View;
-import android.view.ViewGroup;
-
-import felixwiemuth.simplereminder.R;
-
-public class TemplatesFragment extends Fragment {
-
-
-    public TemplatesFragment() {
-        // Required empty public constructor
-    }
-
-    /**
-     * Create a new instance of this fragment.
-     *
-     * @return
-     */
-    public static TemplatesFragment newInstance() {
-        return new TemplatesFragment();
-    }
-
-
-    @Override
-    public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
-        // Inflate the layout for this fragment
-        return inflater.inflate(R.layout.fragment_templates, container, false);
-    }
-
-}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder.ui.reminderslist
+
+import android.os.Bundle
+import android.view.LayoutInflater
+import android.view.View
+import android.view.ViewGroup
+import android.widget.TextView
+import androidx.appcompat.app.AlertDialog
+import androidx.cardview.widget.CardView
+import androidx.core.content.ContextCompat
+import androidx.fragment.app.Fragment
+import androidx.recyclerview.widget.RecyclerView
+import felixwiemuth.simplereminder.R
+import felixwiemuth.simplereminder.TemplateStorage
+import felixwiemuth.simplereminder.data.Template
+import felixwiemuth.simplereminder.ui.TemplateReminderActivity
+
+/**
+ * A fragment displaying the reminder templates. Tapping a template adds a reminder from it, long-pressing a template
+ * offers to delete it. Templates are added from the action mode of [RemindersListFragment].
+ */
+class TemplatesFragment : Fragment() {
+    private lateinit var templatesListRecyclerView: RecyclerView
+    private lateinit var emptyView: TextView
+    private var templates: List<Template> = emptyList()
+
+    private val changeListener = TemplateStorage.ChangeListener { templates ->
+        // The view's handler runs this on the main thread (and not at all if the view was destroyed)
+        view?.post { showTemplates(templates) }
+    }
+
+    override fun onCreateView(inflater: LayoutInflater, container: ViewGroup?, savedInstanceState: Bundle?): View? {
+        val rootView = inflater.inflate(R.layout.fragment_templates, container, false)
+        templatesListRecyclerView = rootView.findViewById(R.id.templates_list)
+        templatesListRecyclerView.adapter = TemplatesAdapter()
+        emptyView = rootView.findViewById(R.id.templates_empty)
+        return rootView
+    }
+
+    override fun onStart() {
+        super.onStart()
+        TemplateStorage.addChangeListener(changeListener)
+        showTemplates(TemplateStorage.getTemplates(requireContext()))
+    }
+
+    override fun onStop() {
+        TemplateStorage.removeChangeListener(changeListener)
+        super.onStop()
+    }
+
+    private fun showTemplates(templates: List<Template>) {
+        this.templates = templates
+        templatesListRecyclerView.adapter!!.notifyDataSetChanged()
+        emptyView.visibility = if (templates.isEmpty()) View.VISIBLE else View.GONE
+    }
+
+    private fun showDeleteTemplateDialog(template: Template) {
+        AlertDialog.Builder(requireContext())
+            .setMessage(getString(R.string.dialog_delete_template_message, template.text))
+            .setPositiveButton(R.string.dialog_delete_template_delete) { _, _ ->
+                TemplateStorage.removeTemplate(requireContext(), template.id)
+            }
+            .setNegativeButton(android.R.string.cancel, null)
+            .show()
+    }
+
+    private inner class TemplatesAdapter : RecyclerView.Adapter<ReminderViewHolder>() {
+        init {
+            setHasStableIds(true)
+        }
+
+        override fun getItemId(position: Int): Long = templates[position].id.toLong()
+
+        override fun getItemCount(): Int = templates.size
+
+        override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): ReminderViewHolder {
+            val cardView = LayoutInflater.from(context).inflate(R.layout.reminder_card, parent, false) as CardView
+            val holder = TimeOnlyReminderViewHolder(cardView)
+            holder.datefieldView.setBackgroundColor(ContextCompat.getColor(requireContext(), R.color.bg_date_scheduled))
+            // Listeners look up the template when invoked, so they are set only once per view holder
+            holder.itemView.setOnClickListener {
+                templates.getOrNull(holder.bindingAdapterPosition)?.let {
+                    TemplateReminderActivity.addReminderFromTemplate(requireContext(), it)
+                }
+            }
+            holder.itemView.setOnLongClickListener {
+                templates.getOrNull(holder.bindingAdapterPosition)?.let { showDeleteTemplateDialog(it) }
+                true
+            }
+            return holder
+        }
+
+        override fun onBindViewHolder(holder: ReminderViewHolder, position: Int) {
+            val template = templates[position]
+            holder.descriptionView.text = template.text
+            holder.timeView.text = getString(R.string.template_delay, template.delay / 60, template.delay % 60)
+        }
+    }
+
+    companion object {
+        /**
+         * Create a new instance of this fragment.
+         */
+        @JvmStatic
+        fun newInstance(): TemplatesFragment = TemplatesFragment()
+    }
+}
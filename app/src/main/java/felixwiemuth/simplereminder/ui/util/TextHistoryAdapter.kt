@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder.ui.util
+
+import android.content.Context
+import android.view.LayoutInflater
+import android.view.View
+import android.view.ViewGroup
+import android.widget.BaseAdapter
+import android.widget.Filter
+import android.widget.Filterable
+import android.widget.TextView
+import felixwiemuth.simplereminder.TextHistory
+
+/**
+ * Adapter for an [android.widget.AutoCompleteTextView] suggesting previously used reminder texts from [TextHistory].
+ * Suggestions are looked up on the filter's worker thread.
+ */
+class TextHistoryAdapter(context: Context) : BaseAdapter(), Filterable {
+    private val context = context.applicationContext
+    private val inflater = LayoutInflater.from(context)
+    private var suggestions: List<String> = emptyList()
+
+    private val filter = object : Filter() {
+        override fun performFiltering(constraint: CharSequence?): FilterResults {
+            val results = if (constraint.isNullOrBlank()) {
+                emptyList()
+            } else {
+                TextHistory.getSuggestions(context, constraint.toString())
+            }
+            return FilterResults().apply {
+                values = results
+                count = results.size
+            }
+        }
+
+        override fun publishResults(constraint: CharSequence?, results: FilterResults) {
+            @Suppress("UNCHECKED_CAST")
+            suggestions = results.values as List<String>? ?: emptyList()
+            if (suggestions.isNotEmpty()) {
+                notifyDataSetChanged()
+            } else {
+                notifyDataSetInvalidated()
+            }
+        }
+    }
+
+    override fun getCount(): Int = suggestions.size
+
+    override fun getItem(position: Int): String = suggestions[position]
+
+    override fun getItemId(position: Int): Long = position.toLong()
+
+    override fun getView(position: Int, convertView: View?, parent: ViewGroup): View {
+        val view = convertView as TextView?
+            ?: inflater.inflate(android.R.layout.simple_dropdown_item_1line, parent, false) as TextView
+        view.text = getItem(position)
+        return view
+    }
+
+    override fun getFilter(): Filter = filter
+}
@@ -17,6 +17,7 @@
 
 package felixwiemuth.simplereminder.util
 
+import android.annotation.SuppressLint
 import android.app.AlarmManager
 import android.app.PendingIntent
 import android.content.Context
@@ -26,9 +27,19 @@ import java.util.Date
 
 object AlarmManagerUtil {
     /**
-     * Schedule an exact alarm (and normal alarm if not possible). Delegates to the correct method depending on SDK version.
+     * The [AlarmManager] method used to set an alarm.
      */
-    fun scheduleExact(context: Context, date: Date, pendingIntent: PendingIntent) {
+    enum class AlarmApi {
+        SET,
+        SET_EXACT,
+        SET_EXACT_AND_ALLOW_WHILE_IDLE
+    }
+
+    /**
+     * Get the most exact alarm API available, depending on SDK version and (from API 31) the permission to schedule
+     * exact alarms.
+     */
+    fun getExactAlarmApi(context: Context): AlarmApi {
         val alarmManager =
             context.getSystemService(Context.ALARM_SERVICE) as AlarmManager
 
@@ -36,13 +47,26 @@ object AlarmManagerUtil {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S && !alarmManager.canScheduleExactAlarms()) {
             Log.w("Scheduling", "Missing permission to schedule exact alarm")
             // Falling back to less precise alarm
-            alarmManager.set(AlarmManager.RTC_WAKEUP, date.time, pendingIntent)
-            Log.d("Scheduling", "Set alarm for " + DateTimeUtil.formatDateTime(date))
-            return
+            return AlarmApi.SET
+        }
+
+        return when {
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.M -> AlarmApi.SET_EXACT_AND_ALLOW_WHILE_IDLE
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT -> AlarmApi.SET_EXACT
+            else -> AlarmApi.SET
         }
+    }
+
+    /**
+     * Schedule an alarm with the given API, which should have been obtained by [getExactAlarmApi].
+     */
+    @SuppressLint("NewApi", "MissingPermission") // Ensured by getExactAlarmApi()
+    fun schedule(context: Context, api: AlarmApi, date: Date, pendingIntent: PendingIntent) {
+        val alarmManager =
+            context.getSystemService(Context.ALARM_SERVICE) as AlarmManager
 
-        when {
-            Build.VERSION.SDK_INT >= Build.VERSION_CODES.M -> {
+        when (api) {
+            AlarmApi.SET_EXACT_AND_ALLOW_WHILE_IDLE -> {
                 alarmManager.setExactAndAllowWhileIdle(
                     AlarmManager.RTC_WAKEUP,
                     date.time,
@@ -51,15 +75,15 @@ object AlarmManagerUtil {
                 Log.d("Scheduling", "Set alarm (\"exact and allow while idle\") for " + DateTimeUtil.formatDateTime(date))
             }
 
-            Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT -> {
+            AlarmApi.SET_EXACT -> {
                 alarmManager.setExact(AlarmManager.RTC_WAKEUP, date.time, pendingIntent)
                 Log.d("Scheduling", "Set alarm (\"exact\") for " + DateTimeUtil.formatDateTime(date))
             }
 
-            else -> {
+            AlarmApi.SET -> {
                 alarmManager.set(AlarmManager.RTC_WAKEUP, date.time, pendingIntent)
                 Log.d("Scheduling", "Set alarm for " + DateTimeUtil.formatDateTime(date))
             }
         }
     }
-}
\ No newline at end of file
+}
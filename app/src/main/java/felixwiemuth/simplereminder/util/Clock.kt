@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder.util
+
+/**
+ * Source of the current time in milliseconds since the epoch, so that code depending on the time can be run against a
+ * virtual clock.
+ */
+fun interface Clock {
+    fun now(): Long
+
+    companion object {
+        /**
+         * The system's wall clock ([System.currentTimeMillis]).
+         */
+        @JvmField
+        val SYSTEM = Clock { System.currentTimeMillis() }
+    }
+}
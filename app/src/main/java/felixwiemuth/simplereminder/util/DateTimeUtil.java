@@ -27,6 +27,7 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import felixwiemuth.simplereminder.R;
 
@@ -35,9 +36,62 @@ import felixwiemuth.simplereminder.R;
  * Note that we cannot use java.time because it requires API 26.
  */
 public class DateTimeUtil {
-    private static DateFormat dfDateTime;
-    private static DateFormat dfDate;
-    private static DateFormat dfTime;
+    /**
+     * The formats, per thread, as {@link SimpleDateFormat} is not thread-safe.
+     */
+    private static final ThreadLocal<Formats> formats = new ThreadLocal<>();
+    /**
+     * Incremented by {@link #resetFormats()}, so that each thread discards its formats the next time it uses them.
+     */
+    private static final AtomicInteger formatsGeneration = new AtomicInteger();
+
+    /**
+     * Cached formats of a thread, created for the time zone and locale at the given generation.
+     */
+    private static class Formats {
+        final int generation;
+        private DateFormat dateTime;
+        private DateFormat date;
+        private DateFormat time;
+        /**
+         * Used to compare whether two dates are on the same day.
+         */
+        private SimpleDateFormat compareDay;
+
+        Formats(int generation) {
+            this.generation = generation;
+        }
+
+        DateFormat getDateTime() {
+            if (dateTime == null) {
+                dateTime = DateFormat.getDateTimeInstance();
+            }
+            return dateTime;
+        }
+
+        @SuppressLint("SimpleDateFormat")
+        DateFormat getTime() {
+            if (time == null) {
+                time = new SimpleDateFormat("HH:mm");
+            }
+            return time;
+        }
+
+        DateFormat getDate() {
+            if (date == null) {
+                date = DateFormat.getDateInstance(DateFormat.MEDIUM);
+            }
+            return date;
+        }
+
+        @SuppressLint("SimpleDateFormat")
+        SimpleDateFormat getCompareDay() {
+            if (compareDay == null) {
+                compareDay = new SimpleDateFormat("ddMMyyyy");
+            }
+            return compareDay;
+        }
+    }
 
     /**
      * Represents a duration in days, hours and minutes and whether it is a positive or negative duration.
@@ -292,42 +346,38 @@ public class DateTimeUtil {
         }
     }
 
-    private static DateFormat getDateTimeFormat() {
-        if (dfDateTime == null) {
-            dfDateTime = DateFormat.getDateTimeInstance();
+    /**
+     * Discard the cached formats, which keep the time zone from when they were created. Must be called when the time
+     * zone changes. May be called from any thread: each thread discards its formats the next time it uses them.
+     */
+    public static void resetFormats() {
+        formatsGeneration.incrementAndGet();
+    }
+
+    private static Formats getFormats() {
+        int generation = formatsGeneration.get();
+        Formats f = formats.get();
+        if (f == null || f.generation != generation) {
+            f = new Formats(generation);
+            formats.set(f);
         }
-        return dfDateTime;
+        return f;
     }
 
+    private static DateFormat getDateTimeFormat() {
+        return getFormats().getDateTime();
+    }
 
-    @SuppressLint("SimpleDateFormat")
     private static DateFormat getTimeFormat() {
-        if (dfTime == null) {
-            dfTime = new SimpleDateFormat("HH:mm");
-            DateFormat.getTimeInstance(DateFormat.MEDIUM);
-        }
-        return dfTime;
+        return getFormats().getTime();
     }
 
-
     private static DateFormat getDateFormat() {
-        if (dfDate == null) {
-            dfDate = DateFormat.getDateInstance(DateFormat.MEDIUM);
-        }
-        return dfDate;
+        return getFormats().getDate();
     }
 
-    /**
-     * Used to compare whether two dates are on the same day:
-     */
-    private static SimpleDateFormat dfCompareDay;
-
-    @SuppressLint("SimpleDateFormat")
     private static SimpleDateFormat getDfCompareDay() {
-        if (dfCompareDay == null) {
-            dfCompareDay = new SimpleDateFormat("ddMMyyyy");
-        }
-        return dfCompareDay;
+        return getFormats().getCompareDay();
     }
 
     public static String formatDateTime(Date date) {
@@ -335,17 +385,38 @@ public class DateTimeUtil {
     }
 
     public static String formatDate(Context context, Date date) {
-        return DateUtils.formatDateTime(context, date.getTime(), DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_NO_YEAR | DateUtils.FORMAT_ABBREV_ALL);
+        return formatDate(context, date.getTime());
+    }
+
+    /**
+     * Like {@link #formatDate(Context, Date)}, with the date in milliseconds.
+     */
+    public static String formatDate(Context context, long time) {
+        return DateUtils.formatDateTime(context, time, DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_NO_YEAR | DateUtils.FORMAT_ABBREV_ALL);
     }
 
     public static String formatDateWithDayOfWeek(Context context, Date date) {
-        return DateUtils.formatDateTime(context, date.getTime(), DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_WEEKDAY | DateUtils.FORMAT_NO_YEAR | DateUtils.FORMAT_ABBREV_ALL);
+        return formatDateWithDayOfWeek(context, date.getTime());
+    }
+
+    /**
+     * Like {@link #formatDateWithDayOfWeek(Context, Date)}, with the date in milliseconds.
+     */
+    public static String formatDateWithDayOfWeek(Context context, long time) {
+        return DateUtils.formatDateTime(context, time, DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_WEEKDAY | DateUtils.FORMAT_NO_YEAR | DateUtils.FORMAT_ABBREV_ALL);
     }
 
     public static String formatTime(Date date) {
         return getTimeFormat().format(date);
     }
 
+    /**
+     * Like {@link #formatTime(Date)}, with the date in milliseconds.
+     */
+    public static String formatTime(long time) {
+        return getTimeFormat().format(time); // DateFormat formats numbers as milliseconds
+    }
+
     /**
      * Check whether two dates are on the same day.
      *
@@ -354,7 +425,16 @@ public class DateTimeUtil {
      * @return
      */
     public static boolean isSameDay(Date d1, Date d2) {
-        return getDfCompareDay().format(d1).equals(dfCompareDay.format(d2));
+        SimpleDateFormat df = getDfCompareDay();
+        return df.format(d1).equals(df.format(d2));
+    }
+
+    /**
+     * Like {@link #isSameDay(Date, Date)}, with the dates in milliseconds.
+     */
+    public static boolean isSameDay(long t1, long t2) {
+        SimpleDateFormat df = getDfCompareDay();
+        return df.format(t1).equals(df.format(t2));
     }
 
     /**
@@ -367,6 +447,13 @@ public class DateTimeUtil {
         return isSameDay(d, new Date());
     }
 
+    /**
+     * Like {@link #isToday(Date)}, with the date in milliseconds.
+     */
+    public static boolean isToday(long t) {
+        return isSameDay(t, System.currentTimeMillis());
+    }
+
     /**
      * Get a copy of the given date where hour, minute, second and millisecond are set to 0.
      *
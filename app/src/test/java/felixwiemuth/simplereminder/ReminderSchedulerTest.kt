@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder
+
+import felixwiemuth.simplereminder.SchedulingSimulator.Companion.DAY
+import felixwiemuth.simplereminder.SchedulingSimulator.Companion.MINUTE
+import felixwiemuth.simplereminder.data.Reminder
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ReminderSchedulerTest {
+    @Test
+    fun nextNagFollowsOriginalDueTime() {
+        val simulator = SchedulingSimulator(START, 0)
+        simulator.clock.time = START + 25 * MINUTE
+        val reminder = Reminder(0, START, naggingRepeatInterval = 10)
+        assertEquals(START + 30 * MINUTE, simulator.scheduler.nextNagTime(reminder))
+    }
+
+    @Test
+    fun distantRemindersHoldNoAlarms() {
+        val simulator = SchedulingSimulator(START, 0)
+        repeat(100) { simulator.add(START + 30 * DAY + it * MINUTE) }
+        assertEquals(0, simulator.runUntil(START + 27 * DAY).peakAlarms)
+        val report = simulator.runUntil(START + 31 * DAY)
+        assertEquals(100, report.peakAlarms)
+        assertEquals(0, report.missed)
+    }
+
+    @Test
+    fun schedulesRemindersAddedAfterClockWasSetBack() {
+        val simulator = SchedulingSimulator(START, 0)
+        simulator.runUntil(START + DAY)
+        simulator.setClock(START - 10 * DAY)
+        // Before the end of the alarm horizon of the maintenance before the clock was set back
+        simulator.add(START - 7 * DAY)
+        val report = simulator.runUntil(START - 6 * DAY)
+        assertEquals(1, report.notificationsPosted)
+        assertEquals(0, report.missed)
+    }
+
+    @Test
+    fun simulationIsReproducible() {
+        fun run() = SchedulingSimulator(START, 42, remindersPerDay = 20, rebootInterval = 5 * DAY).runUntil(START + 30 * DAY)
+        assertEquals(run(), run())
+    }
+
+    /**
+     * Replays half a year of use with delayed alarms and weekly reboots.
+     */
+    @Test
+    fun showsEveryReminderInTime() {
+        val simulator = SchedulingSimulator(START, 1, remindersPerDay = 20, rebootInterval = 7 * DAY)
+        val report = simulator.runUntil(START + 180 * DAY)
+        assertTrue(report.reminders > 1000)
+        assertEquals(0, report.missed)
+        assertTrue(report.maxNotificationDelay <= 10 * MINUTE)
+    }
+
+    companion object {
+        private const val START = 1_700_000_000_000L
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder
+
+import felixwiemuth.simplereminder.ReminderScheduler.AlarmKind
+import felixwiemuth.simplereminder.ReminderScheduler.NotificationKind
+import felixwiemuth.simplereminder.data.Recurrence
+import felixwiemuth.simplereminder.data.Recurrence.Frequency
+import felixwiemuth.simplereminder.data.Reminder
+import felixwiemuth.simplereminder.data.Reminder.Status
+import felixwiemuth.simplereminder.util.Clock
+import java.util.*
+
+/**
+ * Runs a [ReminderScheduler] against a virtual clock and a simulated system, so that months of use are replayed in
+ * seconds. The simulated system delivers exact alarms up to [maxAlarmDelay] late (as when the device is idle) and the
+ * inexact alarm maintenance up to [maxMaintenanceDelay] late, and removes all alarms and notifications when it reboots
+ * every [rebootInterval]. The simulated user adds [remindersPerDay] reminders on average and marks notified reminders
+ * done within [maxReactionTime]. The simulation mirrors what [ReminderManager] does on these events. All randomness
+ * comes from [seed], so that runs are reproducible.
+ */
+class SchedulingSimulator(
+    start: Long,
+    seed: Long,
+    private val remindersPerDay: Int = 0,
+    private val rebootInterval: Long = 0,
+    private val maxAlarmDelay: Long = 10 * MINUTE,
+    private val maxMaintenanceDelay: Long = 12 * HOUR,
+    private val maxReactionTime: Long = 8 * HOUR
+) {
+    /**
+     * @param alarmsSet alarms set with the system
+     * @param alarmsSkipped alarms not set because exactly that alarm was set already
+     * @param wakeups times the system delivered alarms (at the same time counting once)
+     * @param peakAlarms the maximum number of alarms set at the same time
+     * @param maxNotificationDelay the maximum time from a reminder's due time to its first notification
+     * @param missed scheduled reminders which are overdue by more than [maxAlarmDelay] at the end
+     */
+    data class Report(
+        val reminders: Int,
+        val alarmsSet: Int,
+        val alarmsSkipped: Int,
+        val wakeups: Int,
+        val notificationsPosted: Int,
+        val storageWrites: Int,
+        val peakAlarms: Int,
+        val maxNotificationDelay: Long,
+        val missed: Int
+    )
+
+    class VirtualClock(var time: Long) : Clock {
+        override fun now(): Long = time
+    }
+
+    private data class Alarm(val kind: AlarmKind, val time: Long)
+
+    private sealed class Event(val time: Long) {
+        class AlarmDelivery(time: Long, val reminderId: Int, val alarm: Alarm) : Event(time)
+        class Maintenance(time: Long, val generation: Int) : Event(time)
+        class Reboot(time: Long) : Event(time)
+        class UserAddsReminder(time: Long) : Event(time)
+        class UserMarksDone(time: Long, val reminderId: Int) : Event(time)
+    }
+
+    val clock = VirtualClock(start)
+    private val random = Random(seed)
+    private val events = PriorityQueue<Event>(compareBy { it.time })
+    private var nextId = 0
+
+    // State of the app
+    private val stored = HashMap<Int, Reminder>()
+    private var alarmHorizonEnd = 0L
+
+    // State of the system
+    private val alarms = HashMap<Int, Alarm>()
+    private val notifications = HashSet<Int>()
+    private var maintenanceGeneration = 0
+    private var lastWakeup = -1L
+
+    // Statistics
+    private var alarmsSet = 0
+    private var alarmsSkipped = 0
+    private var wakeups = 0
+    private var notificationsPosted = 0
+    private var storageWrites = 0
+    private var peakAlarms = 0
+    private var maxNotificationDelay = 0L
+
+    private val platform = object : ReminderScheduler.Platform {
+        override fun setAlarm(reminderId: Int, kind: AlarmKind, time: Long) {
+            val alarm = Alarm(kind, time)
+            // As with the AlarmRegistry
+            if (alarms[reminderId] == alarm) {
+                alarmsSkipped++
+                return
+            }
+            alarms[reminderId] = alarm
+            alarmsSet++
+            peakAlarms = maxOf(peakAlarms, alarms.size)
+            events.add(Event.AlarmDelivery(maxOf(time, clock.time) + delay(maxAlarmDelay), reminderId, alarm))
+        }
+
+        override fun cancelAlarm(reminderId: Int) {
+            alarms.remove(reminderId)
+        }
+
+        override fun postNotification(reminder: Reminder, kind: NotificationKind) {
+            notifications.add(reminder.id)
+            notificationsPosted++
+            if (kind == NotificationKind.DUE) {
+                maxNotificationDelay = maxOf(maxNotificationDelay, clock.time - reminder.time)
+                events.add(Event.UserMarksDone(clock.time + delay(maxReactionTime), reminder.id))
+            }
+        }
+
+        override fun cancelNotification(reminderId: Int) {
+            notifications.remove(reminderId)
+        }
+
+        override fun storeReminder(reminder: Reminder) {
+            stored[reminder.id] = reminder
+            storageWrites++
+        }
+
+        override var alarmHorizonEnd: Long
+            get() = this@SchedulingSimulator.alarmHorizonEnd
+            set(value) {
+                this@SchedulingSimulator.alarmHorizonEnd = value
+            }
+
+        override fun setAlarmMaintenance(time: Long) {
+            events.add(Event.Maintenance(time + delay(maxMaintenanceDelay), ++maintenanceGeneration))
+        }
+    }
+
+    val scheduler = ReminderScheduler(clock, platform)
+
+    init {
+        scheduler.scheduleAndReshowAll(emptyList())
+        if (remindersPerDay > 0) {
+            events.add(Event.UserAddsReminder(start + nextAddDelay()))
+        }
+        if (rebootInterval > 0) {
+            events.add(Event.Reboot(start + rebootInterval))
+        }
+    }
+
+    /**
+     * Add a reminder with the given properties (and a new ID) now, as [ReminderManager.addReminder] does.
+     */
+    fun add(time: Long, naggingRepeatInterval: Int = 0, recurrence: Recurrence? = null) {
+        val reminder = Reminder(nextId, time, naggingRepeatInterval, recurrence = recurrence)
+        nextId += 2
+        platform.storeReminder(reminder)
+        scheduler.schedule(reminder)
+    }
+
+    /**
+     * Set the wall-clock time (forward or back), as the user or the network may, and react as
+     * [ReminderManager.onClockChanged] does. Alarms remain set for their wall-clock times.
+     */
+    fun setClock(time: Long) {
+        clock.time = time
+        stored.values.filter { it.status == Status.NOTIFIED && it.isNagging }.forEach { scheduler.scheduleNextNag(it) }
+        if (scheduler.onWallClockChanged()) {
+            scheduler.performAlarmMaintenance(stored.values)
+        }
+    }
+
+    /**
+     * Process all events up to the given time and advance the clock to it.
+     */
+    fun runUntil(time: Long): Report {
+        while (events.isNotEmpty() && events.peek()!!.time <= time) {
+            val event = events.poll()!!
+            clock.time = event.time
+            process(event)
+        }
+        clock.time = time
+        return report()
+    }
+
+    private fun process(event: Event) {
+        when (event) {
+            is Event.AlarmDelivery -> {
+                // The alarm has been replaced or cancelled since
+                if (alarms[event.reminderId] !== event.alarm) {
+                    return
+                }
+                wakeUp()
+                alarms.remove(event.reminderId)
+                val reminder = stored.getValue(event.reminderId)
+                when (event.alarm.kind) {
+                    AlarmKind.NOTIFY -> scheduler.show(reminder)
+                    AlarmKind.NAG -> scheduler.nag(reminder)
+                }
+            }
+            is Event.Maintenance -> if (event.generation == maintenanceGeneration) {
+                wakeUp()
+                scheduler.performAlarmMaintenance(stored.values)
+            }
+            is Event.Reboot -> {
+                alarms.clear()
+                notifications.clear()
+                maintenanceGeneration++
+                scheduler.scheduleAndReshowAll(stored.values)
+                events.add(Event.Reboot(clock.time + rebootInterval))
+            }
+            is Event.UserAddsReminder -> {
+                val nagging = if (random.nextInt(10) < 3) 5 + random.nextInt(56) else 0
+                val recurrence = when (random.nextInt(20)) {
+                    0, 1 -> Recurrence(Frequency.DAILY)
+                    2 -> Recurrence(Frequency.WEEKLY)
+                    else -> null
+                }
+                add(clock.time + MINUTE + delay(60 * DAY), nagging, recurrence)
+                events.add(Event.UserAddsReminder(clock.time + nextAddDelay()))
+            }
+            is Event.UserMarksDone -> {
+                // The user may have marked the reminder done already by an earlier notification
+                val reminder = stored.getValue(event.reminderId)
+                if (reminder.status != Status.NOTIFIED) {
+                    return
+                }
+                platform.cancelNotification(reminder.id)
+                platform.cancelAlarm(reminder.id)
+                val completed = reminder.completed(clock.time)
+                platform.storeReminder(completed)
+                if (completed.status == Status.SCHEDULED) {
+                    scheduler.reschedule(completed)
+                }
+            }
+        }
+    }
+
+    private fun wakeUp() {
+        if (clock.time != lastWakeup) {
+            wakeups++
+            lastWakeup = clock.time
+        }
+    }
+
+    private fun delay(max: Long): Long = (random.nextDouble() * max).toLong()
+
+    private fun nextAddDelay(): Long = 1 + delay(2 * DAY / remindersPerDay)
+
+    private fun report() = Report(
+        reminders = stored.size,
+        alarmsSet = alarmsSet,
+        alarmsSkipped = alarmsSkipped,
+        wakeups = wakeups,
+        notificationsPosted = notificationsPosted,
+        storageWrites = storageWrites,
+        peakAlarms = peakAlarms,
+        maxNotificationDelay = maxNotificationDelay,
+        missed = stored.values.count { it.status == Status.SCHEDULED && it.time < clock.time - maxAlarmDelay }
+    )
+
+    companion object {
+        const val MINUTE = 60 * 1000L
+        const val HOUR = 60 * MINUTE
+        const val DAY = 24 * HOUR
+    }
+}
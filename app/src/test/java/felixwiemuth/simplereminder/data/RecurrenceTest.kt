@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder.data
+
+import felixwiemuth.simplereminder.data.Recurrence.Frequency
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Before
+import org.junit.Test
+import java.util.*
+
+class RecurrenceTest {
+    private lateinit var defaultTimeZone: TimeZone
+
+    @Before
+    fun setTimeZone() {
+        defaultTimeZone = TimeZone.getDefault()
+        TimeZone.setDefault(TimeZone.getTimeZone("Europe/Berlin"))
+    }
+
+    @After
+    fun resetTimeZone() {
+        TimeZone.setDefault(defaultTimeZone)
+    }
+
+    private fun date(year: Int, month: Int, day: Int, hour: Int = 9, minute: Int = 30): Date =
+        GregorianCalendar(year, month - 1, day, hour, minute).time
+
+    @Test
+    fun nextDailyOccurrence() {
+        val recurrence = Recurrence(Frequency.DAILY)
+        assertEquals(date(2024, 3, 6), recurrence.next(date(2024, 3, 5), date(2024, 3, 5).time))
+    }
+
+    @Test
+    fun skipsMissedOccurrences() {
+        val recurrence = Recurrence(Frequency.DAILY, 3)
+        // Occurrences on 1, 4, 7, ..., 31 January, 3 February
+        assertEquals(date(2024, 2, 3), recurrence.next(date(2024, 1, 1), date(2024, 2, 1, 12).time))
+    }
+
+    @Test
+    fun skipsWeekends() {
+        val recurrence = Recurrence(Frequency.WEEKDAYS)
+        // 8 March 2024 is a Friday
+        assertEquals(date(2024, 3, 11), recurrence.next(date(2024, 3, 8), date(2024, 3, 8).time))
+        assertEquals(date(2024, 3, 18), recurrence.next(date(2024, 3, 8), date(2024, 3, 15, 10).time))
+    }
+
+    @Test
+    fun nextWeeklyOccurrence() {
+        val recurrence = Recurrence(Frequency.WEEKLY, 2)
+        assertEquals(date(2024, 3, 19), recurrence.next(date(2024, 3, 5), date(2024, 3, 10).time))
+    }
+
+    @Test
+    fun keepsTimeOfDayAcrossDaylightSavingTimeChange() {
+        // Daylight saving time starts on 31 March 2024
+        val recurrence = Recurrence(Frequency.DAILY)
+        assertEquals(date(2024, 4, 2), recurrence.next(date(2024, 3, 25), date(2024, 4, 1, 10).time))
+        assertEquals(
+            listOf(date(2024, 3, 30), date(2024, 3, 31), date(2024, 4, 1)),
+            recurrence.occurrences(date(2024, 3, 30), date(2024, 4, 1, 12).time).toList()
+        )
+    }
+
+    @Test
+    fun occurrencesEndBeforeLimit() {
+        val recurrence = Recurrence(Frequency.WEEKDAYS)
+        assertEquals(
+            listOf(date(2024, 3, 7), date(2024, 3, 8), date(2024, 3, 11)),
+            recurrence.occurrences(date(2024, 3, 7), date(2024, 3, 12).time).toList()
+        )
+    }
+
+    @Test
+    fun completingRecurringReminderSchedulesNextOccurrence() {
+        val reminder = Reminder(0, date(2024, 3, 5), status = Reminder.Status.NOTIFIED, recurrence = Recurrence(Frequency.DAILY))
+        val completed = reminder.completed(date(2024, 3, 7, 8).time)
+        assertEquals(date(2024, 3, 7), completed.date)
+        assertEquals(Reminder.Status.SCHEDULED, completed.status)
+    }
+
+    @Test
+    fun snoozingRecurringReminderKeepsLaterOccurrences() {
+        val reminder = Reminder(0, date(2024, 3, 5, 8, 0), status = Reminder.Status.NOTIFIED, recurrence = Recurrence(Frequency.DAILY))
+        val snoozed = reminder.snoozedUntil(date(2024, 3, 5, 8, 10).time).snoozedUntil(date(2024, 3, 5, 8, 20).time)
+        assertEquals(date(2024, 3, 5, 8, 0).time, snoozed.occurrenceTime)
+        val completed = snoozed.completed(date(2024, 3, 5, 8, 25).time)
+        assertEquals(date(2024, 3, 6, 8, 0), completed.date)
+        assertEquals(null, completed.occurrence)
+    }
+
+    @Test
+    fun completingReminderMarksItDone() {
+        val reminder = Reminder(0, date(2024, 3, 5), status = Reminder.Status.NOTIFIED)
+        assertEquals(Reminder.Status.DONE, reminder.completed(date(2024, 3, 7).time).status)
+    }
+
+    @Test
+    fun nonRecurringReminderIsStoredWithoutRecurrence() {
+        assertFalse(Json.encodeToString(Reminder(0, date(2024, 3, 5))).contains("recurrence"))
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder.data
+
+import felixwiemuth.simplereminder.data.Reminder.Companion.MAX_REMINDER_ID
+import felixwiemuth.simplereminder.data.ReminderIdAllocator.Companion.QUARANTINE_MILLIS
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Test
+import java.util.*
+
+class ReminderIdAllocatorTest {
+    private val exhausted = MAX_REMINDER_ID + 2
+
+    @Test
+    fun allocatesFreshEvenIdsInOrder() {
+        val allocator = ReminderIdAllocator()
+        assertEquals(0, allocator.allocate(0) { error("Must not need used IDs") })
+        assertEquals(2, allocator.allocate(0) { error("Must not need used IDs") })
+        assertEquals(4, allocator.nextFreshId)
+    }
+
+    @Test
+    fun allocatesMaxIdBeforeRecycling() {
+        val allocator = ReminderIdAllocator(MAX_REMINDER_ID)
+        assertEquals(MAX_REMINDER_ID, allocator.allocate(0) { emptyList() })
+        assertEquals(0, allocator.allocate(0) { emptyList() })
+    }
+
+    @Test
+    fun recyclesNextFreeIdFromCursor() {
+        val allocator = ReminderIdAllocator(exhausted, 10)
+        val used = listOf(10, 12, 16)
+        assertEquals(14, allocator.allocate(0) { used })
+        assertEquals(18, allocator.allocate(0) { used + 14 })
+        assertEquals(20, allocator.cursor)
+    }
+
+    @Test
+    fun wrapsAroundAtEndOfIdSpace() {
+        val allocator = ReminderIdAllocator(exhausted, MAX_REMINDER_ID)
+        assertEquals(2, allocator.allocate(0) { listOf(MAX_REMINDER_ID, 0) })
+    }
+
+    @Test
+    fun doesNotRecycleQuarantinedIds() {
+        val allocator = ReminderIdAllocator(exhausted)
+        allocator.free(listOf(0, 2), 1000)
+        assertEquals(4, allocator.allocate(1000 + QUARANTINE_MILLIS - 1) { emptyList() })
+    }
+
+    @Test
+    fun recyclesIdsAfterQuarantine() {
+        val allocator = ReminderIdAllocator(exhausted)
+        allocator.free(listOf(0, 2), 1000)
+        assertEquals(0, allocator.allocate(1000 + QUARANTINE_MILLIS) { emptyList() })
+        assertEquals(0, allocator.freedIds.size)
+    }
+
+    @Test
+    fun doesNotRecordFreedIdsWhileManyFreshIdsRemain() {
+        val allocator = ReminderIdAllocator(10)
+        allocator.free(listOf(0, 2), 1000)
+        assertEquals(0, allocator.freedIds.size)
+        assertFalse(allocator.freedIdsChanged)
+    }
+
+    @Test
+    fun quarantinesIdsFreedShortlyBeforeFreshIdsRunOut() {
+        val allocator = ReminderIdAllocator(MAX_REMINDER_ID)
+        allocator.free(listOf(0, 2), 1000)
+        assertEquals(MAX_REMINDER_ID, allocator.allocate(1000) { emptyList() })
+        assertEquals(4, allocator.allocate(1000) { listOf(MAX_REMINDER_ID) })
+    }
+
+    @Test
+    fun buildsRecyclableIdsOnlyOnce() {
+        val allocator = ReminderIdAllocator(exhausted)
+        var builds = 0
+        val used = { builds++; listOf(0, 4) }
+        assertEquals(2, allocator.allocate(0, used))
+        assertEquals(6, allocator.allocate(0, used))
+        assertEquals(1, builds)
+    }
+
+    @Test
+    fun doesNotRecycleReservedIds() {
+        val allocator = ReminderIdAllocator(exhausted)
+        allocator.allocate(0) { emptyList() }
+        allocator.free(listOf(0), 0)
+        allocator.reserve(listOf(0, 2))
+        assertEquals(0, allocator.freedIds.size)
+        assertEquals(4, allocator.allocate(QUARANTINE_MILLIS) { error("Must not rebuild") })
+    }
+
+    @Test
+    fun encodesRecyclableIds() {
+        val bits = BitSet()
+        bits.set(0)
+        bits.set(9)
+        bits.set(MAX_REMINDER_ID / 2)
+        assertEquals(bits, ReminderIdAllocator.fromBytes(ReminderIdAllocator.toBytes(bits)))
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun failsWhenAllIdsAreUsed() {
+        ReminderIdAllocator(exhausted).allocate(0) { (0..MAX_REMINDER_ID step 2).toList() }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder.data
+
+import felixwiemuth.simplereminder.data.Recurrence.Frequency
+import org.junit.Assert.assertEquals
+import org.junit.Assert.fail
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+
+class ReminderNdjsonTest {
+    private val reminders = listOf(
+        Reminder(0, 1_700_000_000_000L, text = "Plain"),
+        Reminder(2, 1_700_000_060_000L, 15, "Nagging \"quoted\"\nwith newline", Reminder.Status.NOTIFIED),
+        Reminder(4, 1_700_000_120_000L, text = "Recurring", status = Reminder.Status.DONE, recurrence = Recurrence(Frequency.WEEKLY, 2))
+    )
+
+    private fun read(text: String, batchSize: Int): List<List<Reminder>> {
+        val batches = ArrayList<List<Reminder>>()
+        ReminderNdjson.read(ByteArrayInputStream(text.toByteArray()), batchSize) { batches.add(it) }
+        return batches
+    }
+
+    @Test
+    fun readsWrittenRemindersInBatches() {
+        val out = ByteArrayOutputStream()
+        assertEquals(3, ReminderNdjson.write(reminders.asSequence(), out))
+        val text = out.toString("UTF-8")
+        assertEquals(3, text.lines().count { it.isNotEmpty() })
+        assertEquals(listOf(reminders.take(2), reminders.drop(2)), read(text, 2))
+    }
+
+    @Test
+    fun skipsBlankLines() {
+        val out = ByteArrayOutputStream()
+        ReminderNdjson.write(reminders.asSequence(), out)
+        assertEquals(reminders, read("\n" + out.toString("UTF-8").replace("\n", "\n  \n"), 10).single())
+    }
+
+    @Test
+    fun reportsLineOfInvalidReminder() {
+        val out = ByteArrayOutputStream()
+        ReminderNdjson.write(reminders.take(1).asSequence(), out)
+        try {
+            read(out.toString("UTF-8") + "\n{\"id\": 3, \"date\": \"x\"}\n", 10)
+            fail()
+        } catch (e: ReminderNdjson.FormatException) {
+            assertEquals(3, e.line)
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder.data
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class ReminderSearchIndexTest {
+    private fun reminder(id: Int, text: String, time: Long = 0) = Reminder(id, time, text = text)
+
+    private fun ReminderSearchIndex.ids(query: String, limit: Int = 10) = search(query, limit).map { it.id }
+
+    @Test
+    fun matchesTokenPrefixesOfAllQueryTokens() {
+        val index = ReminderSearchIndex()
+        index.put(reminder(0, "Dentist appointment"))
+        index.put(reminder(2, "Appointment with the bank"))
+        index.put(reminder(4, "Call dentist's office"))
+        assertEquals(setOf(0, 2), index.ids("APPOINT").toSet())
+        assertEquals(listOf(0), index.ids("den app"))
+        assertEquals(emptyList<Int>(), index.ids("dentist bank"))
+        assertEquals(emptyList<Int>(), index.ids(" - "))
+    }
+
+    @Test
+    fun ranksExactMatchesAndOccurrencesFirstThenLatest() {
+        val index = ReminderSearchIndex()
+        index.put(reminder(0, "plants", time = 1))
+        index.put(reminder(2, "plan trip", time = 2))
+        index.put(reminder(4, "plan plan", time = 3))
+        index.put(reminder(6, "planning", time = 4))
+        // "plan plan": 2 exact matches; "plan trip": 1 exact match; then the prefix matches, latest first
+        assertEquals(listOf(4, 2, 6, 0), index.ids("plan"))
+        assertEquals(listOf(4, 2), index.ids("plan", limit = 2))
+    }
+
+    @Test
+    fun replacesAndRemovesReminders() {
+        val index = ReminderSearchIndex()
+        index.put(reminder(0, "Buy milk"))
+        index.put(reminder(2, "Buy bread"))
+        index.put(reminder(0, "Return books"))
+        assertEquals(listOf(2), index.ids("buy"))
+        assertEquals(listOf(0), index.ids("books"))
+        index.remove(2)
+        assertEquals(emptyList<Int>(), index.ids("buy"))
+        assertEquals(1, index.size)
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder.data
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.*
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReference
+
+class ReminderVersionsTest {
+    private fun reminders(vararg balances: Int): List<Reminder> =
+        balances.mapIndexed { i, balance -> Reminder(2 * i, 0L, naggingRepeatInterval = balance) }
+
+    @Test
+    fun publishesPreparedVersionOnly() {
+        val versions = ReminderVersions()
+        val loaded = versions.load(reminders(1, 2))
+        versions.prepare(reminders(3))
+        assertSame(loaded, versions.latest)
+        versions.publish()
+        assertEquals(1L, versions.latest!!.version)
+        assertEquals(reminders(3), versions.latest!!.reminders)
+    }
+
+    @Test
+    fun discardsVersionOfAbortedTransaction() {
+        val versions = ReminderVersions()
+        val loaded = versions.load(reminders(1))
+        versions.prepare(reminders(2))
+        versions.discard()
+        versions.publish()
+        assertSame(loaded, versions.latest)
+    }
+
+    @Test
+    fun addsOnlyToLoadedReminders() {
+        val versions = ReminderVersions()
+        versions.prepareAdded(reminders(1).single())
+        versions.publish()
+        assertNull(versions.latest)
+        versions.load(reminders(1))
+        versions.prepareAdded(Reminder(2, 0L))
+        versions.publish()
+        assertEquals(2, versions.latest!!.size)
+        assertEquals(0L, versions.latest!![2]!!.time)
+    }
+
+    /**
+     * Writers move amounts between reminders (as their nagging intervals), so that a reader seeing a partial update
+     * would see a different total.
+     */
+    @Test
+    fun readersNeverSeePartialUpdates() {
+        val count = 100
+        val total = count * 10
+        val versions = ReminderVersions()
+        versions.load(reminders(*IntArray(count) { 10 }))
+        val lock = Any()
+        val running = AtomicBoolean(true)
+        val reads = AtomicLong()
+        val failure = AtomicReference<Throwable>()
+        val done = CountDownLatch(WRITERS + READERS)
+
+        fun thread(body: () -> Unit) = Thread {
+            try {
+                body()
+            } catch (e: Throwable) {
+                failure.compareAndSet(null, e)
+                running.set(false)
+            } finally {
+                done.countDown()
+            }
+        }.start()
+
+        // Writers start once all readers run, so that the reads overlap the writes
+        val readersStarted = CountDownLatch(READERS)
+        repeat(READERS) {
+            thread {
+                var lastVersion = -1L
+                readersStarted.countDown()
+                do {
+                    val snapshot = versions.latest!!
+                    assertTrue("Versions must not go back", snapshot.version >= lastVersion)
+                    lastVersion = snapshot.version
+                    assertEquals(total, snapshot.reminders.sumOf { it.naggingRepeatInterval })
+                    assertEquals(snapshot.reminders[count - 1], snapshot[2 * (count - 1)])
+                    reads.incrementAndGet()
+                } while (running.get() && lastVersion < WRITERS * WRITES_PER_WRITER)
+            }
+        }
+        repeat(WRITERS) { w ->
+            thread {
+                readersStarted.await()
+                val random = Random(w.toLong())
+                repeat(WRITES_PER_WRITER) {
+                    synchronized(lock) {
+                        val current = versions.latest!!.reminders.toMutableList()
+                        val from = random.nextInt(count)
+                        val to = random.nextInt(count)
+                        val amount = random.nextInt(5)
+                        current[from] = current[from].copy(naggingRepeatInterval = current[from].naggingRepeatInterval - amount)
+                        current[to] = current[to].copy(naggingRepeatInterval = current[to].naggingRepeatInterval + amount)
+                        versions.prepare(current)
+                        versions.publish()
+                    }
+                }
+            }
+        }
+
+        assertTrue("Timed out", done.await(60, TimeUnit.SECONDS))
+        failure.get()?.let { throw it }
+        assertEquals((WRITERS * WRITES_PER_WRITER).toLong(), versions.latest!!.version)
+        assertTrue(reads.get() >= READERS)
+    }
+
+    companion object {
+        private const val WRITERS = 2
+        private const val READERS = 4
+        private const val WRITES_PER_WRITER = 5000
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder.data
+
+import felixwiemuth.simplereminder.data.TextHistoryIndex.Companion.RECENCY_HALF_LIFE
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class TextHistoryIndexTest {
+    private fun reminder(id: Int, text: String, time: Long = 0) = Reminder(id, time, text = text)
+
+    @Test
+    fun findsTextsByPrefixIgnoringCase() {
+        val index = TextHistoryIndex()
+        index.putAll(listOf(reminder(0, "Call Anna"), reminder(2, "call bob "), reminder(4, "Buy milk")))
+        assertEquals(setOf("Call Anna", "call bob"), index.query("CALL", 5, 0).toSet())
+        assertEquals(emptyList<String>(), index.query("call anna", 5, 0))
+    }
+
+    @Test
+    fun ranksByCountWeightedByRecency() {
+        val index = TextHistoryIndex()
+        index.putAll(listOf(reminder(0, "Water plants"), reminder(2, "Water plants"), reminder(4, "Walk")))
+        assertEquals(listOf("Water plants", "Walk"), index.query("wa", 5, 0))
+        // Two half-lives later, a single recent use outweighs the two old ones
+        index.put(reminder(6, "Wash car", 2 * RECENCY_HALF_LIFE))
+        assertEquals("Wash car", index.query("wa", 1, 2 * RECENCY_HALF_LIFE).single())
+    }
+
+    @Test
+    fun updatesOnChangeAndRemoval() {
+        val index = TextHistoryIndex()
+        index.putAll(listOf(reminder(0, "Pay rent"), reminder(2, "Pay rent")))
+        index.put(reminder(0, "Pack bag"))
+        index.remove(2)
+        assertEquals(listOf("Pack bag"), index.query("pa", 5, 0))
+        assertEquals(1, index.size)
+    }
+
+    @Test
+    fun putAllCountsLastOfSameIdOnly() {
+        val index = TextHistoryIndex()
+        index.putAll(listOf(reminder(0, "Pay rent"), reminder(0, "Pay rent"), reminder(0, "Pack bag")))
+        assertEquals(listOf("Pack bag"), index.query("pa", 5, 0))
+        index.remove(0)
+        assertEquals(0, index.size)
+    }
+
+    @Test
+    fun putAllMergesIntoExistingEntries() {
+        val texts = (0 until 200).map { "text ${(it * 37) % 101}" }
+        val incremental = TextHistoryIndex()
+        texts.forEachIndexed { i, text -> incremental.put(reminder(2 * i, text, i.toLong())) }
+        val bulk = TextHistoryIndex()
+        bulk.putAll(texts.take(50).mapIndexed { i, text -> reminder(2 * i, text, i.toLong()) })
+        bulk.putAll(texts.drop(50).mapIndexed { i, text -> reminder(2 * (i + 50), text, i + 50L) })
+        assertEquals(incremental.size, bulk.size)
+        assertEquals(incremental.query("text 1", 20, 200), bulk.query("text 1", 20, 200))
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2018-2024 Felix Wiemuth and contributors (see CONTRIBUTORS.md)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package felixwiemuth.simplereminder.ui.reminderslist
+
+import felixwiemuth.simplereminder.data.Reminder
+import felixwiemuth.simplereminder.data.Reminder.Status
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ReminderSelectionTest {
+    private fun reminder(id: Int, status: Status = Status.SCHEDULED) = Reminder(id, 0L, status = status)
+
+    @Test
+    fun countsByStatus() {
+        val selection = ReminderSelection()
+        assertTrue(selection.add(0, Status.SCHEDULED))
+        assertTrue(selection.add(2, Status.NOTIFIED))
+        assertFalse(selection.add(0, Status.SCHEDULED))
+        assertTrue(selection.remove(0, Status.SCHEDULED))
+        assertEquals(1, selection.size)
+        assertEquals(0, selection.count(Status.SCHEDULED))
+        assertEquals(1, selection.count(Status.NOTIFIED))
+        assertEquals(setOf(2), selection.ids())
+    }
+
+    @Test
+    fun selectAllThenUnselectOne() {
+        val selection = ReminderSelection()
+        selection.selectAll(intArrayOf(0, 2, 4), intArrayOf(3, 0, 0))
+        assertTrue(selection.remove(2, Status.SCHEDULED))
+        assertEquals(setOf(0, 4), selection.ids())
+        assertEquals(2, selection.count(Status.SCHEDULED))
+    }
+
+    @Test
+    fun reminderAddedAfterSelectAllIsNotSelected() {
+        val selection = ReminderSelection()
+        selection.selectAll(intArrayOf(0, 2), intArrayOf(2, 0, 0))
+        assertFalse(6 in selection)
+        selection.retainOnly(listOf(reminder(0), reminder(2, Status.NOTIFIED), reminder(6)))
+        assertEquals(setOf(0, 2), selection.ids())
+        assertEquals(1, selection.count(Status.SCHEDULED))
+        assertEquals(1, selection.count(Status.NOTIFIED))
+    }
+}